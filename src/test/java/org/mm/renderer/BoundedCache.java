@@ -0,0 +1,108 @@
+package org.mm.renderer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, thread-safe map that evicts the least recently used entry once full, with hit, miss and eviction
+ * counts. It is the storage shared by {@link ExpressionCache} and {@link org.mm.renderer.owlapi.IRICache}.
+ * <p>
+ * Callers look a key up with {@link #get} and, on a miss, build the value outside the lock and offer it with
+ * {@link #putIfAbsent}, so a slow build does not block other threads. Two threads missing on the same key may
+ * both build a value; the first one stored wins and is returned to both.
+ */
+public class BoundedCache<K, V>
+{
+   private final int maximumSize;
+   private final Map<K, V> entries;
+
+   private final AtomicLong hitCount = new AtomicLong();
+   private final AtomicLong missCount = new AtomicLong();
+   private final AtomicLong evictionCount = new AtomicLong();
+
+   public BoundedCache(int maximumSize)
+   {
+      if (maximumSize < 1) {
+         throw new IllegalArgumentException("Cache size must be positive: " + maximumSize);
+      }
+      this.maximumSize = maximumSize;
+      this.entries = new LinkedHashMap<K, V>(16, 0.75f, true)
+      {
+         private static final long serialVersionUID = 1L;
+
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<K, V> eldest)
+         {
+            boolean evict = size() > BoundedCache.this.maximumSize;
+            if (evict) {
+               evictionCount.incrementAndGet();
+            }
+            return evict;
+         }
+      };
+   }
+
+   /**
+    * Returns the value cached for the key, marking it as most recently used, or null if there is none. Counts a
+    * hit or a miss.
+    */
+   public V get(K key)
+   {
+      V cached;
+      synchronized (entries) {
+         cached = entries.get(key);
+      }
+      if (cached != null) {
+         hitCount.incrementAndGet();
+      } else {
+         missCount.incrementAndGet();
+      }
+      return cached;
+   }
+
+   /**
+    * Caches the value unless another value was cached for the key first, and returns the value now cached.
+    */
+   public V putIfAbsent(K key, V value)
+   {
+      synchronized (entries) {
+         V raced = entries.putIfAbsent(key, value);
+         return raced != null ? raced : value;
+      }
+   }
+
+   public void clear()
+   {
+      synchronized (entries) {
+         entries.clear();
+      }
+   }
+
+   public int size()
+   {
+      synchronized (entries) {
+         return entries.size();
+      }
+   }
+
+   public int getMaximumSize()
+   {
+      return maximumSize;
+   }
+
+   public long getHitCount()
+   {
+      return hitCount.get();
+   }
+
+   public long getMissCount()
+   {
+      return missCount.get();
+   }
+
+   public long getEvictionCount()
+   {
+      return evictionCount.get();
+   }
+}
@@ -0,0 +1,36 @@
+package org.mm.renderer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import org.junit.Test;
+
+public class BoundedCacheTest
+{
+   @Test
+   public void TestLeastRecentlyUsedEntryIsEvicted()
+   {
+      BoundedCache<String, Integer> cache = new BoundedCache<>(2);
+      cache.putIfAbsent("Car", 1);
+      cache.putIfAbsent("Truck", 2);
+      cache.get("Car");
+      cache.putIfAbsent("Bus", 3); // evicts "Truck"
+
+      assertThat(cache.get("Truck"), is(nullValue()));
+      assertThat(cache.get("Car"), is(1));
+      assertThat(cache.size(), is(2));
+      assertThat(cache.getEvictionCount(), is(1L));
+      assertThat(cache.getHitCount(), is(2L));
+      assertThat(cache.getMissCount(), is(1L));
+   }
+
+   @Test
+   public void TestFirstValueStoredWins()
+   {
+      BoundedCache<String, Integer> cache = new BoundedCache<>(2);
+
+      assertThat(cache.putIfAbsent("Car", 1), is(1));
+      assertThat(cache.putIfAbsent("Car", 2), is(1));
+   }
+}
@@ -0,0 +1,197 @@
+package org.mm.renderer;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.mm.core.settings.ReferenceSettings;
+import org.mm.parser.ParseException;
+import org.mm.parser.node.MMExpressionNode;
+
+/**
+ * A bounded, thread-safe cache of compiled {@link MMExpressionNode} trees. Entries are keyed by the expression
+ * text together with a snapshot of all reference settings, so the same expression parsed under a different
+ * value encoding or different reference defaults is compiled separately. Each entry also holds the
+ * {@link ExpressionPlan} built from its tree, once one has been asked for. The least recently used entry is
+ * evicted once the cache is full.
+ */
+public class ExpressionCache
+{
+   public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+   private final BoundedCache<Key, Entry> entries;
+
+   public ExpressionCache()
+   {
+      this(DEFAULT_MAXIMUM_SIZE);
+   }
+
+   public ExpressionCache(int maximumSize)
+   {
+      this.entries = new BoundedCache<>(maximumSize);
+   }
+
+   /**
+    * Returns the compiled form of the given expression, parsing it only if it has not been seen before under
+    * equivalent settings. Expressions that fail to parse are not cached.
+    */
+   public MMExpressionNode getExpression(String expression, ReferenceSettings settings) throws ParseException
+   {
+      return getEntry(expression, settings).expressionNode;
+   }
+
+   /**
+    * Returns the plan for the given expression, building it from the cached tree the first time it is asked for.
+    */
+   ExpressionPlan getPlan(String expression, ReferenceSettings settings) throws ParseException
+   {
+      Entry entry = getEntry(expression, settings);
+      ExpressionPlan plan = entry.plan;
+      if (plan == null) {
+         plan = new ExpressionPlan(expression, entry.expressionNode, settings);
+         entry.plan = plan; // Plans are immutable, so racing builds are harmless
+      }
+      return plan;
+   }
+
+   private Entry getEntry(String expression, ReferenceSettings settings) throws ParseException
+   {
+      Key key = new Key(expression, settings);
+      Entry cached = entries.get(key);
+      if (cached != null) {
+         return cached;
+      }
+      return entries.putIfAbsent(key, new Entry(ParserPool.parse(expression, settings)));
+   }
+
+   public void clear()
+   {
+      entries.clear();
+   }
+
+   public int size()
+   {
+      return entries.size();
+   }
+
+   public int getMaximumSize()
+   {
+      return entries.getMaximumSize();
+   }
+
+   public long getHitCount()
+   {
+      return entries.getHitCount();
+   }
+
+   public long getMissCount()
+   {
+      return entries.getMissCount();
+   }
+
+   public long getEvictionCount()
+   {
+      return entries.getEvictionCount();
+   }
+
+   @Override
+   public String toString()
+   {
+      return String.format("ExpressionCache[size=%d, maximumSize=%d, hits=%d, misses=%d, evictions=%d]",
+            size(), getMaximumSize(), getHitCount(), getMissCount(), getEvictionCount());
+   }
+
+   /**
+    * A parsed tree and, once built, the plan compiled from it.
+    */
+   private static final class Entry
+   {
+      private final MMExpressionNode expressionNode;
+      private volatile ExpressionPlan plan;
+
+      private Entry(MMExpressionNode expressionNode)
+      {
+         this.expressionNode = expressionNode;
+      }
+   }
+
+   /**
+    * Snapshot of the expression text and every setting the parser may consult. The parser bakes the reference
+    * defaults (shift, empty location and literal handling, entity existence handling, default language, prefix,
+    * datatype and so on) into the tree, so the key holds the value of every getter of the settings object rather
+    * than a chosen few. The settings object itself is mutable, so its values are copied rather than held by
+    * reference.
+    */
+   private static final class Key
+   {
+      private static final Map<Class<?>, Method[]> GETTERS = new ConcurrentHashMap<>();
+
+      private final String expression;
+      private final Class<?> settingsClass;
+      private final Object[] settingValues;
+      private final int hashCode;
+
+      private Key(String expression, ReferenceSettings settings)
+      {
+         this.expression = expression;
+         this.settingsClass = settings.getClass();
+         Method[] getters = GETTERS.computeIfAbsent(settingsClass, Key::findGetters);
+         this.settingValues = new Object[getters.length];
+         for (int i = 0; i < getters.length; i++) {
+            settingValues[i] = getSetting(getters[i], settings);
+         }
+         this.hashCode = 31 * expression.hashCode() + Arrays.hashCode(settingValues);
+      }
+
+      private static Method[] findGetters(Class<?> settingsClass)
+      {
+         List<Method> getters = new ArrayList<>();
+         for (Method method : settingsClass.getMethods()) {
+            String name = method.getName();
+            if ((name.startsWith("get") || name.startsWith("is")) && !name.equals("getClass")
+                  && method.getParameterCount() == 0 && method.getReturnType() != void.class
+                  && !Modifier.isStatic(method.getModifiers())) {
+               getters.add(method);
+            }
+         }
+         getters.sort(Comparator.comparing(Method::getName));
+         return getters.toArray(new Method[getters.size()]);
+      }
+
+      private static Object getSetting(Method getter, ReferenceSettings settings)
+      {
+         try {
+            return getter.invoke(settings);
+         } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Unable to read reference setting " + getter.getName(), e);
+         }
+      }
+
+      @Override
+      public boolean equals(Object obj)
+      {
+         if (this == obj) {
+            return true;
+         }
+         if (!(obj instanceof Key)) {
+            return false;
+         }
+         Key other = (Key) obj;
+         return expression.equals(other.expression)
+               && settingsClass.equals(other.settingsClass)
+               && Arrays.equals(settingValues, other.settingValues);
+      }
+
+      @Override
+      public int hashCode()
+      {
+         return hashCode;
+      }
+   }
+}
@@ -0,0 +1,137 @@
+package org.mm.renderer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mm.core.settings.ReferenceSettings;
+import org.mm.core.settings.ValueEncodingSetting;
+import org.mm.parser.ParseException;
+import org.mm.parser.node.MMExpressionNode;
+
+public class ExpressionCacheTest
+{
+   private ReferenceSettings settings;
+
+   @Rule
+   public final ExpectedException thrown = ExpectedException.none();
+
+   @Before
+   public void setUp()
+   {
+      settings = new ReferenceSettings();
+      settings.setValueEncodingSetting(ValueEncodingSetting.RDF_ID);
+   }
+
+   @Test
+   public void TestRepeatedExpressionIsParsedOnce() throws Exception
+   {
+      ExpressionCache cache = new ExpressionCache(4);
+
+      MMExpressionNode first = cache.getExpression("Class: @A*", settings);
+      MMExpressionNode second = cache.getExpression("Class: @A*", settings);
+
+      assertThat(second, is(sameInstance(first)));
+      assertThat(cache.getMissCount(), is(1L));
+      assertThat(cache.getHitCount(), is(1L));
+      assertThat(cache.size(), is(1));
+   }
+
+   @Test
+   public void TestCompiledPlanIsCached() throws Exception
+   {
+      ExpressionCache cache = new ExpressionCache(4);
+
+      ExpressionPlan first = ExpressionPlan.compile("Class: @A* SubClassOf: mm:toLowerCase(\"CAR\")", settings, cache);
+      ExpressionPlan second = ExpressionPlan.compile("Class: @A* SubClassOf: mm:toLowerCase(\"CAR\")", settings, cache);
+
+      assertThat(second, is(sameInstance(first)));
+      assertThat(second.getExpressionNode(), is(sameInstance(cache.getExpression(first.getExpression(), settings))));
+      assertThat(cache.getMissCount(), is(1L));
+   }
+
+   @Test
+   public void TestDifferentSettingsAreCachedSeparately() throws Exception
+   {
+      ExpressionCache cache = new ExpressionCache(4);
+      ReferenceSettings labelSettings = new ReferenceSettings();
+      labelSettings.setValueEncodingSetting(ValueEncodingSetting.RDFS_LABEL);
+
+      MMExpressionNode idNode = cache.getExpression("Class: @A*", settings);
+      MMExpressionNode labelNode = cache.getExpression("Class: @A*", labelSettings);
+
+      assertThat(labelNode, is(not(sameInstance(idNode))));
+      assertThat(cache.getMissCount(), is(2L));
+      assertThat(cache.size(), is(2));
+   }
+
+   @Test
+   public void TestAnySettingSeparatesEntries() throws Exception
+   {
+      ExpressionCache cache = new ExpressionCache(4);
+
+      MMExpressionNode englishNode = cache.getExpression("Class: @A*", new LanguageSettings("en"));
+      MMExpressionNode frenchNode = cache.getExpression("Class: @A*", new LanguageSettings("fr"));
+      MMExpressionNode englishAgain = cache.getExpression("Class: @A*", new LanguageSettings("en"));
+
+      assertThat(frenchNode, is(not(sameInstance(englishNode))));
+      assertThat(englishAgain, is(sameInstance(englishNode)));
+      assertThat(cache.size(), is(2));
+   }
+
+   @Test
+   public void TestLeastRecentlyUsedEntryIsEvicted() throws Exception
+   {
+      ExpressionCache cache = new ExpressionCache(2);
+
+      cache.getExpression("Class: Car", settings);
+      cache.getExpression("Class: Vehicle", settings);
+      cache.getExpression("Class: Car", settings);
+      cache.getExpression("Class: Truck", settings); // evicts "Class: Vehicle"
+      cache.getExpression("Class: Car", settings);
+
+      assertThat(cache.size(), is(2));
+      assertThat(cache.getEvictionCount(), is(1L));
+      assertThat(cache.getHitCount(), is(2L));
+      assertThat(cache.getMissCount(), is(3L));
+   }
+
+   @Test
+   public void TestParseFailureIsNotCached() throws Exception
+   {
+      ExpressionCache cache = new ExpressionCache(4);
+      try {
+         cache.getExpression("Class: @", settings);
+      } catch (ParseException e) {
+         // Expected
+      }
+      assertThat(cache.size(), is(0));
+
+      thrown.expect(ParseException.class);
+      cache.getExpression("Class: @", settings);
+   }
+
+   /**
+    * Settings with an extra default the key has no special knowledge of.
+    */
+   public static class LanguageSettings extends ReferenceSettings
+   {
+      private final String defaultLanguage;
+
+      private LanguageSettings(String defaultLanguage)
+      {
+         this.defaultLanguage = defaultLanguage;
+         setValueEncodingSetting(ValueEncodingSetting.RDF_ID);
+      }
+
+      public String getDefaultLanguage()
+      {
+         return defaultLanguage;
+      }
+   }
+}
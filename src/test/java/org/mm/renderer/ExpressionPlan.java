@@ -0,0 +1,90 @@
+package org.mm.renderer;
+
+import java.util.Optional;
+
+import org.mm.core.settings.ReferenceSettings;
+import org.mm.exceptions.MappingMasterException;
+import org.mm.parser.ParseException;
+import org.mm.parser.node.MMExpressionNode;
+import org.mm.renderer.owlapi.OWLRenderer;
+import org.mm.renderer.text.TextRenderer;
+import org.mm.rendering.owlapi.OWLRendering;
+import org.mm.rendering.text.TextRendering;
+import org.mm.ss.ReferenceFootprint;
+import org.mm.ss.SpreadSheetDataSource;
+import org.mm.ss.SpreadsheetLocation;
+
+/**
+ * A mapping expression parsed once for use on many rows, together with the cells it may read. Building a plan
+ * saves re-parsing the expression for every row; it does not save the tree walk, which {@link OWLRenderer} and
+ * {@link TextRenderer} still perform in full for each row, evaluating every reference and function call against
+ * the current cell values. A plan therefore produces exactly the renderings those renderers would produce for a
+ * freshly parsed expression.
+ * <p>
+ * Plans are cached with their parsed tree in the {@link ExpressionCache}, so compiling an expression seen before
+ * costs one cache lookup. Compiling a new one scans its text once for cell references. Callers that render one
+ * expression once, such as {@link IntegrationTestBase}, gain nothing from a plan and parse directly.
+ */
+public class ExpressionPlan
+{
+   private final String expression;
+   private final MMExpressionNode expressionNode;
+   private final ReferenceFootprint footprint;
+
+   ExpressionPlan(String expression, MMExpressionNode expressionNode, ReferenceSettings settings)
+   {
+      this.expression = expression;
+      this.expressionNode = expressionNode;
+      this.footprint = ReferenceFootprint.of(expression, settings);
+   }
+
+   /**
+    * Compiles the given expression, or returns the plan already cached for it under equivalent settings.
+    */
+   public static ExpressionPlan compile(String expression, ReferenceSettings settings, ExpressionCache cache)
+         throws ParseException
+   {
+      return cache.getPlan(expression, settings);
+   }
+
+   public String getExpression()
+   {
+      return expression;
+   }
+
+   public MMExpressionNode getExpressionNode()
+   {
+      return expressionNode;
+   }
+
+   /**
+    * Returns the cells this expression may read, for data sources that load only what is referenced.
+    */
+   public ReferenceFootprint getFootprint()
+   {
+      return footprint;
+   }
+
+   /**
+    * Positions the data source on the given row and renders the parsed tree there.
+    */
+   public Optional<? extends OWLRendering> render(OWLRenderer renderer, SpreadSheetDataSource dataSource,
+         SpreadsheetLocation currentLocation) throws MappingMasterException
+   {
+      dataSource.setCurrentLocation(currentLocation);
+      return renderer.render(expressionNode);
+   }
+
+   public Optional<? extends TextRendering> render(TextRenderer renderer, SpreadSheetDataSource dataSource,
+         SpreadsheetLocation currentLocation) throws MappingMasterException
+   {
+      dataSource.setCurrentLocation(currentLocation);
+      return renderer.render(expressionNode);
+   }
+
+   @Override
+   public String toString()
+   {
+      return "ExpressionPlan[" + expression + "]";
+   }
+}
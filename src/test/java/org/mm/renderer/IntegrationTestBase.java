@@ -57,6 +57,8 @@ public class IntegrationTestBase
 
    private OWLOntologyManager ontologyManager = OWLManager.createOWLOntologyManager();
 
+   private final ExpressionCache expressionCache = new ExpressionCache();
+
    protected IntegrationTestBase()
    {
       // NO-OP
@@ -116,6 +118,12 @@ public class IntegrationTestBase
       return expressionNode.getMMExpressionNode();
    }
 
+   protected ExpressionPlan compileExpression(String expression, ReferenceSettings settings)
+         throws ParseException
+   {
+      return ExpressionPlan.compile(expression, settings, expressionCache);
+   }
+
    protected Optional<? extends TextRendering> createTextRendering(String expression, ReferenceSettings settings)
          throws MappingMasterException, IOException, ParseException
    {
@@ -0,0 +1,242 @@
+package org.mm.renderer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.mm.core.settings.ReferenceSettings;
+import org.mm.parser.ParseException;
+import org.mm.parser.TokenMgrError;
+
+/**
+ * A mapping document holding many expressions, compiled together in one pass. Each expression starts on a line
+ * beginning with <tt>Class:</tt> or <tt>Individual:</tt> and extends over any following lines until the next
+ * expression starts. Continuation lines are joined to the expression unchanged, line breaks included, so quoted
+ * literals spanning several lines keep their whitespace. Lines starting with <tt>#</tt> are ignored, as are blank
+ * lines between expressions.
+ * <p>
+ * A line only starts an expression or a comment when it is outside any double-quoted literal and any
+ * parentheses left open by the lines before it, so a literal or an annotation value whose text contains a line
+ * beginning with <tt>#</tt> or <tt>Class:</tt> stays in its expression. A quote or parenthesis that is never
+ * closed therefore takes in the rest of the document, and the parser reports the error for that one entry.
+ * <p>
+ * All expressions are compiled with the same settings, on the same pooled parser and through the same
+ * {@link ExpressionCache}, so repeated expressions in a document are parsed once. An expression that fails to
+ * parse, whether the parser or its tokenizer rejects it, does not stop the rest of the document from loading; its
+ * error is reported in its {@link Entry}.
+ */
+public class MappingDocument
+{
+   private static final String COMMENT_PREFIX = "#";
+   private static final String[] EXPRESSION_KEYWORDS = { "Class:", "Individual:" };
+
+   private final List<Entry> entries;
+
+   private MappingDocument(List<Entry> entries)
+   {
+      this.entries = Collections.unmodifiableList(entries);
+   }
+
+   public static MappingDocument parse(Reader document, ReferenceSettings settings, ExpressionCache cache)
+         throws IOException
+   {
+      List<Entry> entries = new ArrayList<>();
+      BufferedReader reader = new BufferedReader(document);
+      StringBuilder expression = new StringBuilder();
+      StringBuilder pendingBlankLines = new StringBuilder();
+      Nesting nesting = new Nesting();
+      int expressionLine = 0;
+      int lineNumber = 0;
+      String line;
+      while ((line = reader.readLine()) != null) {
+         lineNumber++;
+         if (nesting.isOpen()) {
+            // Inside a literal or parentheses every line, blank or not, belongs to the expression
+            expression.append(pendingBlankLines).append('\n').append(line);
+            pendingBlankLines.setLength(0);
+            nesting.scan(line);
+            continue;
+         }
+         String trimmed = line.trim();
+         if (trimmed.isEmpty()) {
+            if (expression.length() > 0) {
+               pendingBlankLines.append('\n').append(line);
+            }
+            continue;
+         }
+         if (trimmed.startsWith(COMMENT_PREFIX)) {
+            continue;
+         }
+         if (startsExpression(trimmed)) {
+            if (expression.length() > 0) {
+               entries.add(compile(expressionLine, expression.toString(), settings, cache));
+               expression.setLength(0);
+            }
+            expressionLine = lineNumber;
+            expression.append(line, line.indexOf(trimmed), line.length());
+            nesting.scan(trimmed);
+         } else if (expression.length() == 0) {
+            entries.add(new Entry(lineNumber, trimmed, null,
+                  "Expected an expression starting with Class: or Individual:"));
+         } else {
+            // Continuation lines are kept as written so that whitespace inside multi-line literals survives
+            expression.append(pendingBlankLines).append('\n').append(line);
+            nesting.scan(line);
+         }
+         pendingBlankLines.setLength(0);
+      }
+      if (expression.length() > 0) {
+         entries.add(compile(expressionLine, expression.toString(), settings, cache));
+      }
+      return new MappingDocument(entries);
+   }
+
+   public List<Entry> getEntries()
+   {
+      return entries;
+   }
+
+   /**
+    * Returns the compiled plans of every expression that parsed successfully, in document order.
+    */
+   public List<ExpressionPlan> getPlans()
+   {
+      List<ExpressionPlan> plans = new ArrayList<>();
+      for (Entry entry : entries) {
+         entry.getPlan().ifPresent(plans::add);
+      }
+      return plans;
+   }
+
+   public List<Entry> getFailedEntries()
+   {
+      List<Entry> failed = new ArrayList<>();
+      for (Entry entry : entries) {
+         if (entry.hasError()) {
+            failed.add(entry);
+         }
+      }
+      return failed;
+   }
+
+   public boolean hasErrors()
+   {
+      return !getFailedEntries().isEmpty();
+   }
+
+   private static boolean startsExpression(String line)
+   {
+      for (String keyword : EXPRESSION_KEYWORDS) {
+         if (line.startsWith(keyword)) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   private static Entry compile(int lineNumber, String expression, ReferenceSettings settings, ExpressionCache cache)
+   {
+      try {
+         ExpressionPlan plan = ExpressionPlan.compile(expression, settings, cache);
+         return new Entry(lineNumber, plan.getExpression(), plan, null);
+      } catch (ParseException | TokenMgrError e) {
+         return new Entry(lineNumber, expression, null, e.getMessage());
+      }
+   }
+
+   /**
+    * Tracks, across the lines of an expression, whether a double-quoted literal or a parenthesis is still open.
+    * Backslash escapes are honoured inside literals, and single-quoted names, which cannot span lines, are
+    * skipped so that parentheses in them are not counted.
+    */
+   private static class Nesting
+   {
+      private boolean inLiteral = false;
+      private int depth = 0;
+
+      private boolean isOpen()
+      {
+         return inLiteral || depth > 0;
+      }
+
+      private void scan(String line)
+      {
+         boolean inName = false;
+         for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (inLiteral) {
+               if (c == '\\') {
+                  i++;
+               } else if (c == '"') {
+                  inLiteral = false;
+               }
+            } else if (inName) {
+               inName = c != '\'';
+            } else if (c == '"') {
+               inLiteral = true;
+            } else if (c == '\'') {
+               inName = true;
+            } else if (c == '(') {
+               depth++;
+            } else if (c == ')' && depth > 0) {
+               depth--;
+            }
+         }
+      }
+   }
+
+   /**
+    * One expression in a mapping document, with the line it starts on and either its compiled plan or the
+    * reason it could not be compiled.
+    */
+   public static class Entry
+   {
+      private final int lineNumber;
+      private final String expression;
+      private final ExpressionPlan plan;
+      private final String error;
+
+      private Entry(int lineNumber, String expression, ExpressionPlan plan, String error)
+      {
+         this.lineNumber = lineNumber;
+         this.expression = expression;
+         this.plan = plan;
+         this.error = error;
+      }
+
+      public int getLineNumber()
+      {
+         return lineNumber;
+      }
+
+      public String getExpression()
+      {
+         return expression;
+      }
+
+      public Optional<ExpressionPlan> getPlan()
+      {
+         return Optional.ofNullable(plan);
+      }
+
+      public boolean hasError()
+      {
+         return error != null;
+      }
+
+      public Optional<String> getError()
+      {
+         return Optional.ofNullable(error);
+      }
+
+      @Override
+      public String toString()
+      {
+         return "Line " + lineNumber + ": " + expression + (hasError() ? " [" + error + "]" : "");
+      }
+   }
+}
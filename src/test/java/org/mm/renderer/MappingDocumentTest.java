@@ -0,0 +1,117 @@
+package org.mm.renderer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+import java.io.StringReader;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mm.core.settings.ReferenceSettings;
+import org.mm.core.settings.ValueEncodingSetting;
+
+public class MappingDocumentTest
+{
+   private ReferenceSettings settings;
+
+   @Before
+   public void setUp()
+   {
+      settings = new ReferenceSettings();
+      settings.setValueEncodingSetting(ValueEncodingSetting.RDF_ID);
+   }
+
+   @Test
+   public void TestMultiLineExpressions() throws Exception
+   {
+      String document = "# Vehicles\n"
+            + "Class: Car\n"
+            + "   SubClassOf: Vehicle\n"
+            + "\n"
+            + "Individual: @A*\n"
+            + "   Types: Car\n";
+
+      MappingDocument mapping = MappingDocument.parse(new StringReader(document), settings, new ExpressionCache());
+
+      assertThat(mapping.getEntries(), hasSize(2));
+      assertThat(mapping.hasErrors(), is(false));
+      assertThat(mapping.getEntries().get(0).getExpression(), is("Class: Car\n   SubClassOf: Vehicle"));
+      assertThat(mapping.getEntries().get(1).getLineNumber(), is(5));
+      assertThat(mapping.getPlans(), hasSize(2));
+   }
+
+   @Test
+   public void TestRepeatedExpressionIsParsedOnce() throws Exception
+   {
+      String document = "Class: @A*\nClass: @A*\nClass: @A*\n";
+      ExpressionCache cache = new ExpressionCache();
+
+      MappingDocument mapping = MappingDocument.parse(new StringReader(document), settings, cache);
+
+      assertThat(mapping.getPlans(), hasSize(3));
+      assertThat(cache.getMissCount(), is(1L));
+      assertThat(cache.getHitCount(), is(2L));
+   }
+
+   @Test
+   public void TestParseErrorIsReportedPerExpression() throws Exception
+   {
+      String document = "Class: Car\nClass: @\nClass: Vehicle\n";
+
+      MappingDocument mapping = MappingDocument.parse(new StringReader(document), settings, new ExpressionCache());
+
+      assertThat(mapping.getEntries(), hasSize(3));
+      assertThat(mapping.getPlans(), hasSize(2));
+      assertThat(mapping.getFailedEntries(), hasSize(1));
+      assertThat(mapping.getFailedEntries().get(0).getLineNumber(), is(2));
+   }
+
+   @Test
+   public void TestMultiLineLiteralKeepsWhitespace() throws Exception
+   {
+      String document = "Individual: Car1\n"
+            + "   Annotations: rdfs:comment \"first  line\n"
+            + "\n"
+            + "      third line\"\n"
+            + "\n"
+            + "Class: Car\n";
+
+      MappingDocument mapping = MappingDocument.parse(new StringReader(document), settings, new ExpressionCache());
+
+      assertThat(mapping.getEntries(), hasSize(2));
+      assertThat(mapping.getEntries().get(0).getExpression(),
+            is("Individual: Car1\n   Annotations: rdfs:comment \"first  line\n\n      third line\""));
+      assertThat(mapping.getEntries().get(1).getExpression(), is("Class: Car"));
+   }
+
+   @Test
+   public void TestKeywordAndCommentLinesInsideLiteral() throws Exception
+   {
+      String document = "Individual: Car1\n"
+            + "   Annotations: rdfs:comment \"Notes:\n"
+            + "# not a comment\n"
+            + "Class: not an expression \\\" still quoted\"\n"
+            + "Class: Car\n";
+
+      MappingDocument mapping = MappingDocument.parse(new StringReader(document), settings, new ExpressionCache());
+
+      assertThat(mapping.getEntries(), hasSize(2));
+      assertThat(mapping.getEntries().get(0).getExpression(),
+            is("Individual: Car1\n   Annotations: rdfs:comment \"Notes:\n# not a comment\n"
+                  + "Class: not an expression \\\" still quoted\""));
+      assertThat(mapping.getEntries().get(1).getLineNumber(), is(5));
+   }
+
+   @Test
+   public void TestTokenErrorIsReportedPerExpression() throws Exception
+   {
+      String document = "Class: Car\nClass: \u00a7\nClass: Vehicle\n";
+
+      MappingDocument mapping = MappingDocument.parse(new StringReader(document), settings, new ExpressionCache());
+
+      assertThat(mapping.getEntries(), hasSize(3));
+      assertThat(mapping.getPlans(), hasSize(2));
+      assertThat(mapping.getFailedEntries().get(0).getLineNumber(), is(2));
+   }
+}
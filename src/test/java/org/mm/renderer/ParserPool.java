@@ -0,0 +1,104 @@
+package org.mm.renderer;
+
+import java.io.ByteArrayInputStream;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.mm.core.settings.ReferenceSettings;
+import org.mm.parser.ASTExpression;
+import org.mm.parser.MappingMasterParser;
+import org.mm.parser.ParseException;
+import org.mm.parser.SimpleNode;
+import org.mm.parser.node.ExpressionNode;
+import org.mm.parser.node.MMExpressionNode;
+
+/**
+ * Hands out one {@link MappingMasterParser} per thread and re-initialises it over a {@link Reader} for each
+ * expression, instead of constructing a new parser (and its token manager and character buffers) every time.
+ * Expressions are read as characters, so no byte copy is made and the platform charset plays no part.
+ * <p>
+ * A pooled parser keeps a reference to the settings it was created with; asking for a different settings
+ * object replaces the thread's parser.
+ */
+public final class ParserPool
+{
+   private static final ThreadLocal<PooledParser> PARSERS = new ThreadLocal<>();
+
+   private ParserPool()
+   {
+      // NO-OP
+   }
+
+   public static MMExpressionNode parse(CharSequence expression, ReferenceSettings settings) throws ParseException
+   {
+      MappingMasterParser parser = acquire(settings);
+      parser.ReInit(toReader(expression));
+      SimpleNode simpleNode = parser.expression();
+      ExpressionNode expressionNode = new ExpressionNode((ASTExpression) simpleNode);
+      return expressionNode.getMMExpressionNode();
+   }
+
+   private static MappingMasterParser acquire(ReferenceSettings settings)
+   {
+      PooledParser pooled = PARSERS.get();
+      if (pooled == null || pooled.settings != settings) {
+         MappingMasterParser parser = new MappingMasterParser(new ByteArrayInputStream(new byte[0]), settings, -1);
+         pooled = new PooledParser(parser, settings);
+         PARSERS.set(pooled);
+      }
+      return pooled.parser;
+   }
+
+   private static Reader toReader(CharSequence expression)
+   {
+      if (expression instanceof String) {
+         return new StringReader((String) expression);
+      }
+      return new CharSequenceReader(expression);
+   }
+
+   private static final class PooledParser
+   {
+      private final MappingMasterParser parser;
+      private final ReferenceSettings settings;
+
+      private PooledParser(MappingMasterParser parser, ReferenceSettings settings)
+      {
+         this.parser = parser;
+         this.settings = settings;
+      }
+   }
+
+   /**
+    * A reader over a character sequence that reads directly from the sequence rather than copying it.
+    */
+   private static final class CharSequenceReader extends Reader
+   {
+      private final CharSequence sequence;
+      private int position = 0;
+
+      private CharSequenceReader(CharSequence sequence)
+      {
+         this.sequence = sequence;
+      }
+
+      @Override
+      public int read(char[] buffer, int offset, int length)
+      {
+         if (position >= sequence.length()) {
+            return -1;
+         }
+         int count = Math.min(length, sequence.length() - position);
+         for (int i = 0; i < count; i++) {
+            buffer[offset + i] = sequence.charAt(position++);
+         }
+         return count;
+      }
+
+      @Override
+      public void close()
+      {
+         // NO-OP
+      }
+   }
+}
@@ -0,0 +1,21 @@
+package org.mm.renderer.owlapi;
+
+import org.semanticweb.owlapi.model.OWLAxiom;
+
+/**
+ * Receives the axioms rendered for a sheet as they are produced, tagged with the index of the expression that
+ * produced them and the 1-based row being rendered.
+ */
+@FunctionalInterface
+public interface AxiomSink
+{
+   void accept(int expressionIndex, int rowNumber, OWLAxiom axiom);
+
+   /**
+    * Called once after the last axiom of a rendering run has been passed to the sink.
+    */
+   default void flush()
+   {
+      // NO-OP
+   }
+}
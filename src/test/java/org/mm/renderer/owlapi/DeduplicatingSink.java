@@ -0,0 +1,193 @@
+package org.mm.renderer.owlapi;
+
+import java.util.Arrays;
+
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.util.SimpleRenderer;
+
+/**
+ * An {@link AxiomSink} that drops axioms already passed on, so an expression driven by a categorical column that
+ * renders the same axiom on thousands of rows reaches the ontology or writer once per distinct axiom.
+ * <p>
+ * Axioms are not retained: each is reduced to a 64-bit fingerprint of its rendering by a {@link SimpleRenderer}
+ * owned by the sink, which writes full IRIs whatever the global <tt>ToStringRenderer</tt> is set to. Fingerprints
+ * are kept in an open-addressing table of longs (8 bytes per slot), at most half full. The table doubles as it
+ * fills, up to the given maximum number of fingerprints; past that, new axioms are passed on without being
+ * remembered, so memory stays bounded and the worst case is a duplicate reaching the delegate. At the default
+ * maximum of {@link #DEFAULT_MAX_FINGERPRINTS} the table grows to 2<sup>25</sup> slots, or 256 MiB.
+ * <p>
+ * A small table of the most recently remembered axioms, indexed by their structural hash code and compared with
+ * <tt>equals</tt>, catches the common case of an axiom repeated on consecutive rows without rendering it.
+ * Duplicates dropped are counted per expression. The sink is not thread-safe.
+ */
+public class DeduplicatingSink implements AxiomSink
+{
+   public static final int DEFAULT_MAX_FINGERPRINTS = 1 << 24;
+
+   /**
+    * The largest maximum accepted; the table for it has 2<sup>30</sup> slots, the largest power-of-two array.
+    */
+   public static final int MAX_FINGERPRINTS_LIMIT = 1 << 29;
+
+   private static final int INITIAL_CAPACITY = 1024;
+   private static final int RECENT_AXIOM_SLOTS = 256;
+
+   private final AxiomSink delegate;
+   private final int maxFingerprints;
+   private final SimpleRenderer renderer = new SimpleRenderer();
+   private final OWLAxiom[] recentAxioms = new OWLAxiom[RECENT_AXIOM_SLOTS];
+
+   private long[] table = new long[INITIAL_CAPACITY];
+   private int size = 0;
+   private long[] duplicateCounts = new long[4];
+   private long overflowCount = 0;
+
+   public DeduplicatingSink(AxiomSink delegate)
+   {
+      this(delegate, DEFAULT_MAX_FINGERPRINTS);
+   }
+
+   public DeduplicatingSink(AxiomSink delegate, int maxFingerprints)
+   {
+      if (maxFingerprints < 1 || maxFingerprints > MAX_FINGERPRINTS_LIMIT) {
+         throw new IllegalArgumentException("Maximum number of fingerprints must be between 1 and "
+               + MAX_FINGERPRINTS_LIMIT + ": " + maxFingerprints);
+      }
+      this.delegate = delegate;
+      this.maxFingerprints = maxFingerprints;
+   }
+
+   @Override
+   public void accept(int expressionIndex, int rowNumber, OWLAxiom axiom)
+   {
+      int recentSlot = recentSlot(axiom);
+      if (axiom.equals(recentAxioms[recentSlot])) {
+         countDuplicate(expressionIndex);
+         return;
+      }
+      long fingerprint = fingerprint(axiom);
+      int slot = findSlot(table, fingerprint);
+      if (table[slot] == fingerprint) {
+         recentAxioms[recentSlot] = axiom;
+         countDuplicate(expressionIndex);
+         return;
+      }
+      if (size < maxFingerprints) {
+         if (2 * (size + 1) > table.length) {
+            grow();
+            slot = findSlot(table, fingerprint);
+         }
+         table[slot] = fingerprint;
+         size++;
+         recentAxioms[recentSlot] = axiom;
+      } else {
+         overflowCount++;
+      }
+      delegate.accept(expressionIndex, rowNumber, axiom);
+   }
+
+   @Override
+   public void flush()
+   {
+      delegate.flush();
+   }
+
+   /**
+    * Returns the number of duplicate axioms dropped for the expression with the given index.
+    */
+   public long getDuplicateCount(int expressionIndex)
+   {
+      return expressionIndex < duplicateCounts.length ? duplicateCounts[expressionIndex] : 0;
+   }
+
+   /**
+    * Returns the number of duplicate axioms dropped for all expressions.
+    */
+   public long getDuplicateCount()
+   {
+      long total = 0;
+      for (long count : duplicateCounts) {
+         total += count;
+      }
+      return total;
+   }
+
+   /**
+    * Returns the number of distinct axioms remembered.
+    */
+   public int getFingerprintCount()
+   {
+      return size;
+   }
+
+   /**
+    * Returns the number of axioms passed on without being remembered because the table was full.
+    */
+   public long getOverflowCount()
+   {
+      return overflowCount;
+   }
+
+   /**
+    * Returns the memory held by the fingerprint table in bytes, not counting the recent axioms it refers to.
+    */
+   public long getMemoryBytes()
+   {
+      return 8L * table.length;
+   }
+
+   @Override
+   public String toString()
+   {
+      return String.format("DeduplicatingSink[fingerprints=%d, duplicates=%d, overflow=%d, memory=%d bytes]",
+            size, getDuplicateCount(), overflowCount, getMemoryBytes());
+   }
+
+   private void countDuplicate(int expressionIndex)
+   {
+      if (expressionIndex >= duplicateCounts.length) {
+         duplicateCounts = Arrays.copyOf(duplicateCounts, Math.max(expressionIndex + 1, 2 * duplicateCounts.length));
+      }
+      duplicateCounts[expressionIndex]++;
+   }
+
+   private void grow()
+   {
+      long[] grown = new long[2 * table.length];
+      for (long fingerprint : table) {
+         if (fingerprint != 0) {
+            grown[findSlot(grown, fingerprint)] = fingerprint;
+         }
+      }
+      table = grown;
+   }
+
+   /*
+    * Linear probing from the fingerprint's home slot; returns the slot holding the fingerprint or the first empty
+    * one. The table is at most half full, so an empty slot is always found.
+    */
+   private static int findSlot(long[] table, long fingerprint)
+   {
+      int mask = table.length - 1;
+      int slot = (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+      while (table[slot] != 0 && table[slot] != fingerprint) {
+         slot = (slot + 1) & mask;
+      }
+      return slot;
+   }
+
+   private static int recentSlot(OWLAxiom axiom)
+   {
+      int hash = axiom.hashCode();
+      return (hash ^ (hash >>> 16)) & (RECENT_AXIOM_SLOTS - 1);
+   }
+
+   /*
+    * A 64-bit hash of the full-IRI rendering of the axiom. Zero marks an empty slot, so it is mapped to one.
+    */
+   private long fingerprint(OWLAxiom axiom)
+   {
+      long hash = Fingerprints.hash64(renderer.render(axiom));
+      return hash == 0 ? 1 : hash;
+   }
+}
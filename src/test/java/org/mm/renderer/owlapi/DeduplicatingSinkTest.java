@@ -0,0 +1,70 @@
+package org.mm.renderer.owlapi;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.semanticweb.owlapi.apibinding.OWLFunctionalSyntaxFactory.Class;
+import static org.semanticweb.owlapi.apibinding.OWLFunctionalSyntaxFactory.Declaration;
+import static org.semanticweb.owlapi.apibinding.OWLFunctionalSyntaxFactory.IRI;
+import static org.semanticweb.owlapi.apibinding.OWLFunctionalSyntaxFactory.SubClassOf;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+
+public class DeduplicatingSinkTest
+{
+   private static final String ONTOLOGY_ID = "http://protege.stanford.edu/mm-test/";
+   private static final OWLClass CAR = Class(IRI(ONTOLOGY_ID, "Car"));
+   private static final OWLClass TRUCK = Class(IRI(ONTOLOGY_ID, "Truck"));
+   private static final OWLClass VEHICLE = Class(IRI(ONTOLOGY_ID, "Vehicle"));
+
+   private final List<OWLAxiom> axioms = new ArrayList<>();
+
+   @Rule
+   public final ExpectedException thrown = ExpectedException.none();
+
+   @Test
+   public void TestDuplicatesDroppedPerExpression()
+   {
+      DeduplicatingSink sink = new DeduplicatingSink((expressionIndex, rowNumber, axiom) -> axioms.add(axiom));
+      for (int rowNumber = 1; rowNumber <= 100; rowNumber++) {
+         sink.accept(0, rowNumber, SubClassOf(CAR, VEHICLE));
+         sink.accept(1, rowNumber, Declaration(VEHICLE));
+      }
+      sink.accept(0, 101, SubClassOf(TRUCK, VEHICLE));
+
+      assertThat(axioms, contains(SubClassOf(CAR, VEHICLE), Declaration(VEHICLE), SubClassOf(TRUCK, VEHICLE)));
+      assertThat(sink.getDuplicateCount(0), is(99L));
+      assertThat(sink.getDuplicateCount(1), is(99L));
+      assertThat(sink.getDuplicateCount(), is(198L));
+      assertThat(sink.getFingerprintCount(), is(3));
+   }
+
+   @Test
+   public void TestMemoryBoundedByMaximum()
+   {
+      DeduplicatingSink sink = new DeduplicatingSink((expressionIndex, rowNumber, axiom) -> axioms.add(axiom), 1);
+      sink.accept(0, 1, Declaration(CAR));
+      sink.accept(0, 2, Declaration(TRUCK));
+      sink.accept(0, 3, Declaration(TRUCK));
+
+      assertThat(axioms.size(), is(3));
+      assertThat(sink.getFingerprintCount(), is(1));
+      assertThat(sink.getOverflowCount(), is(2L));
+      assertThat(sink.getMemoryBytes(), is(8L * 1024));
+   }
+
+   @Test
+   public void TestMaximumAboveLimitRejected()
+   {
+      thrown.expect(IllegalArgumentException.class);
+      new DeduplicatingSink((expressionIndex, rowNumber, axiom) -> axioms.add(axiom),
+            DeduplicatingSink.MAX_FINGERPRINTS_LIMIT + 1);
+   }
+}
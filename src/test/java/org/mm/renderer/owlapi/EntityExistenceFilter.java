@@ -0,0 +1,266 @@
+package org.mm.renderer.owlapi;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyChangeListener;
+
+/**
+ * A Bloom filter over the IRIs of the entities in an ontology signature, for entity existence checks such as
+ * <tt>mm:SkipIfOWLEntityExists</tt> where most IRIs looked up are not in the ontology. An IRI the filter has never
+ * seen is reported absent from the bit arrays alone; a possible hit is confirmed against the ontology.
+ * <p>
+ * The filter is filled from the signature when built and then follows the ontology as a change listener, adding
+ * the signature of every added axiom. Removals leave their bits set, which only costs a confirmed lookup, so
+ * answers stay exact. Call {@link #close} to stop listening.
+ * <p>
+ * The filter grows with the ontology rather than being sized once: when the estimated false positive rate of the
+ * newest bit array passes its target, a new array twice the capacity is added, with half the target rate, and new
+ * IRIs go there. The first array is built for half the rate asked for, so although lookups probe every array,
+ * the rates of all of them sum to less than the rate asked for however many entities are added.
+ */
+public class EntityExistenceFilter implements OWLOntologyChangeListener, AutoCloseable
+{
+   private static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+   private static final long MINIMUM_CAPACITY = 1024;
+
+   private final OWLOntology ontology;
+   private volatile Layer[] layers;
+
+   private final AtomicLong negativeCount = new AtomicLong();
+   private final AtomicLong confirmedCount = new AtomicLong();
+   private final AtomicLong falsePositiveCount = new AtomicLong();
+
+   private EntityExistenceFilter(OWLOntology ontology, long expectedEntities, double falsePositiveRate)
+   {
+      this.ontology = ontology;
+      // Rates of p/2, p/4, ... for successive arrays sum to less than p
+      this.layers = new Layer[] { new Layer(Math.max(expectedEntities, 1), falsePositiveRate / 2) };
+   }
+
+   /**
+    * Builds a filter sized for twice the current signature, and at least a thousand entities, at a one percent
+    * false positive rate.
+    */
+   public static EntityExistenceFilter build(OWLOntology ontology)
+   {
+      long expectedEntities = Math.max(MINIMUM_CAPACITY, 2L * ontology.getSignature().size());
+      return build(ontology, expectedEntities, DEFAULT_FALSE_POSITIVE_RATE);
+   }
+
+   /**
+    * Builds a filter whose first bit array is sized for the given number of entities, keeping the overall false
+    * positive rate below the given rate as it grows, and registers it with the ontology manager.
+    */
+   public static EntityExistenceFilter build(OWLOntology ontology, long expectedEntities, double falsePositiveRate)
+   {
+      if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+         throw new IllegalArgumentException("False positive rate must be between 0 and 1: " + falsePositiveRate);
+      }
+      EntityExistenceFilter filter = new EntityExistenceFilter(ontology, expectedEntities, falsePositiveRate);
+      for (OWLEntity entity : ontology.getSignature()) {
+         filter.add(entity.getIRI());
+      }
+      ontology.getOWLOntologyManager().addOntologyChangeListener(filter);
+      return filter;
+   }
+
+   /**
+    * Returns true if an entity with the IRI is in the ontology signature.
+    */
+   public boolean containsEntity(IRI iri)
+   {
+      if (!mightContain(iri)) {
+         negativeCount.incrementAndGet();
+         return false;
+      }
+      if (ontology.containsEntityInSignature(iri)) {
+         confirmedCount.incrementAndGet();
+         return true;
+      }
+      falsePositiveCount.incrementAndGet();
+      return false;
+   }
+
+   /**
+    * Returns false if no entity with the IRI has been added to the filter, and true if one may have been.
+    */
+   public boolean mightContain(IRI iri)
+   {
+      long hash = Fingerprints.hash64(iri.toString());
+      for (Layer layer : layers) {
+         if (layer.mightContain(hash)) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   @Override
+   public void ontologiesChanged(List<? extends OWLOntologyChange> changes)
+   {
+      for (OWLOntologyChange change : changes) {
+         if (change.getOntology() == ontology && change.isAddAxiom()) {
+            for (OWLEntity entity : change.getAxiom().getSignature()) {
+               add(entity.getIRI());
+            }
+         }
+      }
+   }
+
+   @Override
+   public void close()
+   {
+      ontology.getOWLOntologyManager().removeOntologyChangeListener(this);
+   }
+
+   /**
+    * Returns the number of bit arrays, which is one until the filter first grows.
+    */
+   public int getLayerCount()
+   {
+      return layers.length;
+   }
+
+   public long getBitCount()
+   {
+      long bitCount = 0;
+      for (Layer layer : layers) {
+         bitCount += layer.bitCount;
+      }
+      return bitCount;
+   }
+
+   /**
+    * Returns the expected false positive rate for the number of IRIs added so far: the chance that at least one
+    * bit array reports an IRI it was never given.
+    */
+   public double getExpectedFalsePositiveRate()
+   {
+      double trueNegativeRate = 1;
+      for (Layer layer : layers) {
+         trueNegativeRate *= 1 - layer.getExpectedFalsePositiveRate();
+      }
+      return 1 - trueNegativeRate;
+   }
+
+   public long getNegativeCount()
+   {
+      return negativeCount.get();
+   }
+
+   public long getConfirmedCount()
+   {
+      return confirmedCount.get();
+   }
+
+   public long getFalsePositiveCount()
+   {
+      return falsePositiveCount.get();
+   }
+
+   @Override
+   public String toString()
+   {
+      return String.format("EntityExistenceFilter[layers=%d, bits=%d, negatives=%d, confirmed=%d, falsePositives=%d]",
+            getLayerCount(), getBitCount(), getNegativeCount(), getConfirmedCount(), getFalsePositiveCount());
+   }
+
+   private void add(IRI iri)
+   {
+      long hash = Fingerprints.hash64(iri.toString());
+      Layer[] current = layers;
+      Layer newest = current[current.length - 1];
+      newest.add(hash);
+      if (newest.getExpectedFalsePositiveRate() > newest.falsePositiveRate) {
+         grow(newest);
+      }
+   }
+
+   /**
+    * Adds a bit array of twice the capacity and half the target rate of the full one, unless another thread
+    * already has.
+    */
+   private synchronized void grow(Layer full)
+   {
+      Layer[] current = layers;
+      if (current[current.length - 1] != full) {
+         return;
+      }
+      Layer[] grown = Arrays.copyOf(current, current.length + 1);
+      grown[current.length] = new Layer(2 * full.capacity, full.falsePositiveRate / 2);
+      layers = grown;
+   }
+
+   /**
+    * One bit array, sized for a number of entities at a target false positive rate.
+    */
+   private static class Layer
+   {
+      private final long capacity;
+      private final double falsePositiveRate;
+      private final long bitCount;
+      private final int hashCount;
+      private final AtomicLongArray bits;
+      private final AtomicLong insertionCount = new AtomicLong();
+
+      private Layer(long capacity, double falsePositiveRate)
+      {
+         this.capacity = capacity;
+         this.falsePositiveRate = falsePositiveRate;
+         long m = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+         this.bitCount = Math.max(64, (m + 63) & ~63L);
+         // The optimal count for the target rate, which does not depend on how the bit count was rounded up
+         this.hashCount = Math.max(1, (int) Math.ceil(-Math.log(falsePositiveRate) / Math.log(2)));
+         this.bits = new AtomicLongArray((int) (bitCount >>> 6));
+      }
+
+      private boolean mightContain(long hash)
+      {
+         for (int i = 1; i <= hashCount; i++) {
+            long bit = getBitIndex(hash, i);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+               return false;
+            }
+         }
+         return true;
+      }
+
+      private void add(long hash)
+      {
+         for (int i = 1; i <= hashCount; i++) {
+            long bit = getBitIndex(hash, i);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            while (((current = bits.get(word)) & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+               // Retry until the bit is set
+            }
+         }
+         insertionCount.incrementAndGet();
+      }
+
+      private double getExpectedFalsePositiveRate()
+      {
+         double fill = 1 - Math.exp(-hashCount * (double) insertionCount.get() / bitCount);
+         return Math.pow(fill, hashCount);
+      }
+
+      /*
+       * Returns the i-th probe position from the two halves of the hash (Kirsch and Mitzenmacher double hashing);
+       * the second half is made odd so the probes never collapse onto one bit.
+       */
+      private long getBitIndex(long hash, int i)
+      {
+         int h1 = (int) hash;
+         int h2 = (int) (hash >>> 32) | 1;
+         return Math.floorMod(h1 + i * (long) h2, bitCount);
+      }
+   }
+}
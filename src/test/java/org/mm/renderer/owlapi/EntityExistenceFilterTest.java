@@ -0,0 +1,73 @@
+package org.mm.renderer.owlapi;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.semanticweb.owlapi.apibinding.OWLFunctionalSyntaxFactory.IRI;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mm.renderer.IntegrationTestBase;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+public class EntityExistenceFilterTest extends IntegrationTestBase
+{
+   private OWLOntology ontology;
+
+   @Before
+   public void setUp() throws Exception
+   {
+      ontology = createOWLOntology();
+   }
+
+   @Test
+   public void TestExistingEntityFound() throws Exception
+   {
+      declareOWLClasses(ontology, "Car", "Truck");
+
+      try (EntityExistenceFilter filter = EntityExistenceFilter.build(ontology)) {
+         assertThat(filter.containsEntity(IRI(ONTOLOGY_ID, "Car")), is(true));
+         assertThat(filter.containsEntity(IRI(ONTOLOGY_ID, "Truck")), is(true));
+         assertThat(filter.getConfirmedCount(), is(2L));
+      }
+   }
+
+   @Test
+   public void TestMissingEntityNotFound() throws Exception
+   {
+      declareOWLClass(ontology, "Car");
+
+      try (EntityExistenceFilter filter = EntityExistenceFilter.build(ontology)) {
+         assertThat(filter.containsEntity(IRI(ONTOLOGY_ID, "Bus")), is(false));
+         assertThat(filter.getNegativeCount() + filter.getFalsePositiveCount(), is(1L));
+      }
+   }
+
+   @Test
+   public void TestEntityAddedAfterBuildFound() throws Exception
+   {
+      try (EntityExistenceFilter filter = EntityExistenceFilter.build(ontology, 1000, 0.01)) {
+         declareOWLNamedIndividual(ontology, "Fiat");
+
+         assertThat(filter.mightContain(IRI(ONTOLOGY_ID, "Fiat")), is(true));
+         assertThat(filter.containsEntity(IRI(ONTOLOGY_ID, "Fiat")), is(true));
+      }
+   }
+
+   @Test
+   public void TestFilterGrowsFromEmptyOntology() throws Exception
+   {
+      try (EntityExistenceFilter filter = EntityExistenceFilter.build(ontology, 10, 0.01)) {
+         for (int i = 0; i < 500; i++) {
+            declareOWLClass(ontology, "Model" + i);
+         }
+
+         assertThat(filter.getLayerCount(), is(greaterThan(1)));
+         assertThat(filter.getExpectedFalsePositiveRate(), is(lessThan(0.01)));
+         for (int i = 0; i < 500; i++) {
+            assertThat(filter.mightContain(IRI(ONTOLOGY_ID, "Model" + i)), is(true));
+         }
+      }
+   }
+}
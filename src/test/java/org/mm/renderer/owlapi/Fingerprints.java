@@ -0,0 +1,31 @@
+package org.mm.renderer.owlapi;
+
+/**
+ * 64-bit string hashing shared by the hash-based filters and sinks of this package.
+ */
+final class Fingerprints
+{
+   private Fingerprints()
+   {
+      // NO-OP
+   }
+
+   /**
+    * Returns the 64-bit FNV-1a hash of the characters of the text, finished with the MurmurHash3 mix so that every
+    * bit, including both 32-bit halves, depends on the whole text.
+    */
+   static long hash64(String text)
+   {
+      long hash = 0xcbf29ce484222325L;
+      for (int i = 0; i < text.length(); i++) {
+         hash ^= text.charAt(i);
+         hash *= 0x100000001b3L;
+      }
+      hash ^= hash >>> 33;
+      hash *= 0xff51afd7ed558ccdL;
+      hash ^= hash >>> 33;
+      hash *= 0xc4ceb9fe1a85ec53L;
+      hash ^= hash >>> 33;
+      return hash;
+   }
+}
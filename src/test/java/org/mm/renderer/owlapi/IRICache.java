@@ -0,0 +1,136 @@
+package org.mm.renderer.owlapi;
+
+import org.mm.renderer.BoundedCache;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.PrefixManager;
+
+/**
+ * A bounded, thread-safe cache of {@link IRI} instances keyed by namespace and local name, so an entity name that
+ * recurs across rows, such as an encoded category value or a prefixed name, is resolved and allocated once and
+ * the same instance is reused afterwards. The least recently used entry is evicted once the cache is full.
+ * <p>
+ * Nothing in this tree creates entities through the cache yet: the renderers allocate their IRIs inside
+ * {@link OWLRenderer}, which belongs to the mapping library and cannot be given a cache, and the test harness
+ * resolves names through its {@link PrefixManager} directly. The class is exercised only by {@code IRICacheTest}.
+ */
+public class IRICache
+{
+   public static final int DEFAULT_MAXIMUM_SIZE = 65536;
+
+   private final BoundedCache<Key, IRI> entries;
+
+   public IRICache()
+   {
+      this(DEFAULT_MAXIMUM_SIZE);
+   }
+
+   public IRICache(int maximumSize)
+   {
+      this.entries = new BoundedCache<>(maximumSize);
+   }
+
+   /**
+    * Returns the IRI made of the given namespace and local name, creating it only if it is not cached.
+    */
+   public IRI getIRI(String namespace, String localName)
+   {
+      Key key = new Key(namespace, localName);
+      IRI cached = entries.get(key);
+      if (cached != null) {
+         return cached;
+      }
+      return entries.putIfAbsent(key, IRI.create(namespace, localName));
+   }
+
+   /**
+    * Returns the IRI of a name as the prefix manager would resolve it: a full IRI in angle brackets, a prefixed
+    * name, or a bare name in the default namespace. Names with a prefix the manager does not know are passed to
+    * the prefix manager uncached, so it reports them as it normally would.
+    */
+   public IRI getIRI(PrefixManager prefixManager, String name)
+   {
+      if (name.startsWith("<") && name.endsWith(">")) {
+         return getIRI(name.substring(1, name.length() - 1), "");
+      }
+      int separator = name.indexOf(':');
+      if (separator < 0) {
+         String defaultPrefix = prefixManager.getDefaultPrefix();
+         return defaultPrefix != null ? getIRI(defaultPrefix, name) : prefixManager.getIRI(name);
+      }
+      String namespace = prefixManager.getPrefix(name.substring(0, separator + 1));
+      if (namespace == null) {
+         return prefixManager.getIRI(name);
+      }
+      return getIRI(namespace, name.substring(separator + 1));
+   }
+
+   public void clear()
+   {
+      entries.clear();
+   }
+
+   public int size()
+   {
+      return entries.size();
+   }
+
+   public int getMaximumSize()
+   {
+      return entries.getMaximumSize();
+   }
+
+   public long getHitCount()
+   {
+      return entries.getHitCount();
+   }
+
+   public long getMissCount()
+   {
+      return entries.getMissCount();
+   }
+
+   public long getEvictionCount()
+   {
+      return entries.getEvictionCount();
+   }
+
+   @Override
+   public String toString()
+   {
+      return String.format("IRICache[size=%d, maximumSize=%d, hits=%d, misses=%d, evictions=%d]",
+            size(), getMaximumSize(), getHitCount(), getMissCount(), getEvictionCount());
+   }
+
+   private static final class Key
+   {
+      private final String namespace;
+      private final String localName;
+      private final int hashCode;
+
+      private Key(String namespace, String localName)
+      {
+         this.namespace = namespace;
+         this.localName = localName;
+         this.hashCode = 31 * namespace.hashCode() + localName.hashCode();
+      }
+
+      @Override
+      public boolean equals(Object obj)
+      {
+         if (this == obj) {
+            return true;
+         }
+         if (!(obj instanceof Key)) {
+            return false;
+         }
+         Key other = (Key) obj;
+         return namespace.equals(other.namespace) && localName.equals(other.localName);
+      }
+
+      @Override
+      public int hashCode()
+      {
+         return hashCode;
+      }
+   }
+}
@@ -0,0 +1,60 @@
+package org.mm.renderer.owlapi;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.semanticweb.owlapi.apibinding.OWLFunctionalSyntaxFactory.IRI;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mm.renderer.IntegrationTestBase;
+import org.semanticweb.owlapi.model.IRI;
+
+public class IRICacheTest extends IntegrationTestBase
+{
+   private static final String CARS = "http://example.org/cars#";
+
+   @Before
+   public void setUp() throws Exception
+   {
+      setPrefix(createOWLOntology(), "cars", CARS);
+   }
+
+   @Test
+   public void TestRepeatedNameReusesInstance()
+   {
+      IRICache cache = new IRICache();
+      IRI first = cache.getIRI(ONTOLOGY_ID, "Car");
+      IRI second = cache.getIRI(ONTOLOGY_ID, "Car");
+
+      assertThat(second, sameInstance(first));
+      assertThat(first, is(IRI(ONTOLOGY_ID, "Car")));
+      assertThat(cache.getHitCount(), is(1L));
+      assertThat(cache.getMissCount(), is(1L));
+   }
+
+   @Test
+   public void TestPrefixedAndDefaultNames()
+   {
+      IRICache cache = new IRICache();
+
+      assertThat(cache.getIRI(prefixManager, "Car"), is(IRI(ONTOLOGY_ID, "Car")));
+      assertThat(cache.getIRI(prefixManager, "cars:Sedan"), is(IRI(CARS, "Sedan")));
+      assertThat(cache.getIRI(prefixManager, "cars:Sedan"), sameInstance(cache.getIRI(CARS, "Sedan")));
+   }
+
+   @Test
+   public void TestLeastRecentlyUsedEvicted()
+   {
+      IRICache cache = new IRICache(2);
+      cache.getIRI(ONTOLOGY_ID, "Car");
+      cache.getIRI(ONTOLOGY_ID, "Truck");
+      cache.getIRI(ONTOLOGY_ID, "Car");
+      cache.getIRI(ONTOLOGY_ID, "Bus");
+
+      assertThat(cache.size(), is(2));
+      assertThat(cache.getEvictionCount(), is(1L));
+      cache.getIRI(ONTOLOGY_ID, "Car");
+      assertThat(cache.getHitCount(), is(2L));
+   }
+}
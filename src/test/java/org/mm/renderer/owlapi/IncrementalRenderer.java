@@ -0,0 +1,246 @@
+package org.mm.renderer.owlapi;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.poi.ss.usermodel.Workbook;
+import org.mm.core.OWLAPIOntology;
+import org.mm.exceptions.MappingMasterException;
+import org.mm.renderer.ExpressionPlan;
+import org.mm.ss.ColumnarWorkbook;
+import org.mm.ss.ReferenceFootprint;
+import org.mm.ss.SheetRange;
+import org.mm.ss.SpreadSheetDataSource;
+import org.mm.ss.WorkbookDiff;
+import org.semanticweb.owlapi.model.AddAxiom;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.RemoveAxiom;
+
+/**
+ * Keeps the rendering of a sheet range up to date as the workbook changes, re-rendering only the rows a change
+ * can affect. The first call to {@link #render} renders every row; each later call diffs the new workbook against
+ * the previous one ({@link WorkbookDiff}), re-renders just the affected rows of each expression, and returns the
+ * axioms to add to and remove from the previous output.
+ * <p>
+ * Only the sheets and columns the expressions can read are snapshotted and compared, so cells the expressions
+ * never read cost nothing. The range is given on each call, so rows appended to the sheet are rendered once the
+ * range is widened to take them in, and rows that fall out of the range have their output removed. A range over a
+ * different sheet or different columns re-renders every row.
+ * <p>
+ * The axioms each row produced are kept, along with how many rows produce each axiom, so an axiom rendered by
+ * several rows (such as a shared declaration) is only removed when no row produces it any more.
+ */
+public class IncrementalRenderer
+{
+   private final OWLOntology ontology;
+   private final List<ExpressionPlan> plans;
+   private final List<ReferenceFootprint> footprints = new ArrayList<>();
+
+   private final Map<Integer, List<OWLAxiom>> rowOutputs = new HashMap<>();
+   private final Map<OWLAxiom, Integer> axiomCounts = new HashMap<>();
+   private ColumnarWorkbook previous;
+   private SheetRange previousRange;
+
+   public IncrementalRenderer(OWLOntology ontology, List<ExpressionPlan> plans)
+   {
+      this.ontology = ontology;
+      this.plans = new ArrayList<>(plans);
+      for (ExpressionPlan plan : plans) {
+         footprints.add(plan.getFootprint());
+      }
+   }
+
+   /**
+    * Renders the rows of the range affected since the previous call, or every row on the first call, and
+    * returns the change in output. The workbook is snapshotted, so it may be modified in place between calls.
+    */
+   public Delta render(Workbook workbook, SheetRange range) throws MappingMasterException
+   {
+      ColumnarWorkbook current = ColumnarWorkbook.of(workbook, WorkbookDiff.getReadColumns(footprints, range));
+      BitSet affectedRows = new BitSet();
+      if (previous == null || !hasSameColumns(previousRange, range)) {
+         affectedRows.set(range.getStartRowNumber(), range.getEndRowNumber() + 1);
+         for (Integer rowNumber : rowOutputs.keySet()) {
+            affectedRows.set(rowNumber);
+         }
+      } else {
+         WorkbookDiff diff = WorkbookDiff.of(previous, current);
+         for (ExpressionPlan plan : plans) {
+            affectedRows.or(diff.getAffectedRows(plan.getFootprint(), range));
+         }
+         BitSet resized = getRows(range);
+         resized.xor(getRows(previousRange)); // Rows that entered or left the range
+         affectedRows.or(resized);
+      }
+      BitSet renderedRows = getRows(range);
+      renderedRows.and(affectedRows);
+      Map<Integer, List<OWLAxiom>> newOutputs = renderRows(workbook, range, renderedRows);
+      previous = current;
+      previousRange = range;
+      return applyOutputs(affectedRows, newOutputs, renderedRows.cardinality());
+   }
+
+   /**
+    * Returns the axioms currently produced by the given row.
+    */
+   public List<OWLAxiom> getRowOutput(int rowNumber)
+   {
+      List<OWLAxiom> output = rowOutputs.get(rowNumber);
+      return output == null ? Collections.<OWLAxiom>emptyList() : Collections.unmodifiableList(output);
+   }
+
+   private static boolean hasSameColumns(SheetRange previousRange, SheetRange range)
+   {
+      return previousRange.getSheetName().equals(range.getSheetName())
+            && previousRange.getStartColumnNumber() == range.getStartColumnNumber()
+            && previousRange.getEndColumnNumber() == range.getEndColumnNumber();
+   }
+
+   private static BitSet getRows(SheetRange range)
+   {
+      BitSet rows = new BitSet();
+      rows.set(range.getStartRowNumber(), range.getEndRowNumber() + 1);
+      return rows;
+   }
+
+   private Map<Integer, List<OWLAxiom>> renderRows(Workbook workbook, SheetRange range, BitSet rows)
+         throws MappingMasterException
+   {
+      Map<Integer, List<OWLAxiom>> outputs = new HashMap<>();
+      AxiomSink sink = (expressionIndex, rowNumber, axiom) ->
+            outputs.computeIfAbsent(rowNumber, row -> new ArrayList<>()).add(axiom);
+      SheetRenderer renderer = new SheetRenderer(new OWLAPIOntology(ontology), new SpreadSheetDataSource(workbook));
+      for (int start = rows.nextSetBit(0); start >= 0; ) {
+         int end = rows.nextClearBit(start) - 1; // Render each run of consecutive rows in one pass
+         renderer.renderSheet(range.withRows(start, end), plans, sink);
+         start = rows.nextSetBit(end + 1);
+      }
+      return outputs;
+   }
+
+   private Delta applyOutputs(BitSet rows, Map<Integer, List<OWLAxiom>> newOutputs, int renderedRowCount)
+   {
+      Set<OWLAxiom> touched = new LinkedHashSet<>();
+      Map<OWLAxiom, Integer> countsBefore = new HashMap<>();
+      for (int rowNumber = rows.nextSetBit(0); rowNumber >= 0; rowNumber = rows.nextSetBit(rowNumber + 1)) {
+         List<OWLAxiom> oldOutput = rowOutputs.remove(rowNumber);
+         if (oldOutput != null) {
+            for (OWLAxiom axiom : oldOutput) {
+               recordCount(axiom, countsBefore, touched);
+               adjustCount(axiom, -1);
+            }
+         }
+         List<OWLAxiom> newOutput = newOutputs.get(rowNumber);
+         if (newOutput != null) {
+            rowOutputs.put(rowNumber, newOutput);
+            for (OWLAxiom axiom : newOutput) {
+               recordCount(axiom, countsBefore, touched);
+               adjustCount(axiom, 1);
+            }
+         }
+      }
+      Set<OWLAxiom> added = new LinkedHashSet<>();
+      Set<OWLAxiom> removed = new LinkedHashSet<>();
+      for (OWLAxiom axiom : touched) {
+         boolean wasPresent = countsBefore.get(axiom) > 0;
+         boolean isPresent = axiomCounts.containsKey(axiom);
+         if (isPresent && !wasPresent) {
+            added.add(axiom);
+         } else if (wasPresent && !isPresent) {
+            removed.add(axiom);
+         }
+      }
+      return new Delta(added, removed, renderedRowCount);
+   }
+
+   private void recordCount(OWLAxiom axiom, Map<OWLAxiom, Integer> countsBefore, Set<OWLAxiom> touched)
+   {
+      if (touched.add(axiom)) {
+         Integer count = axiomCounts.get(axiom);
+         countsBefore.put(axiom, count == null ? 0 : count);
+      }
+   }
+
+   private void adjustCount(OWLAxiom axiom, int change)
+   {
+      Integer count = axiomCounts.get(axiom);
+      int updated = (count == null ? 0 : count) + change;
+      if (updated > 0) {
+         axiomCounts.put(axiom, updated);
+      } else {
+         axiomCounts.remove(axiom);
+      }
+   }
+
+   /**
+    * The axioms added and removed by one incremental rendering.
+    */
+   public static class Delta
+   {
+      private final Set<OWLAxiom> addedAxioms;
+      private final Set<OWLAxiom> removedAxioms;
+      private final int renderedRowCount;
+
+      private Delta(Set<OWLAxiom> addedAxioms, Set<OWLAxiom> removedAxioms, int renderedRowCount)
+      {
+         this.addedAxioms = Collections.unmodifiableSet(addedAxioms);
+         this.removedAxioms = Collections.unmodifiableSet(removedAxioms);
+         this.renderedRowCount = renderedRowCount;
+      }
+
+      public Set<OWLAxiom> getAddedAxioms()
+      {
+         return addedAxioms;
+      }
+
+      public Set<OWLAxiom> getRemovedAxioms()
+      {
+         return removedAxioms;
+      }
+
+      /**
+       * Returns the number of rows that were re-rendered to compute this delta.
+       */
+      public int getRenderedRowCount()
+      {
+         return renderedRowCount;
+      }
+
+      public boolean isEmpty()
+      {
+         return addedAxioms.isEmpty() && removedAxioms.isEmpty();
+      }
+
+      /**
+       * Applies the delta to an ontology in one batch of changes.
+       */
+      public void applyTo(OWLOntology target)
+      {
+         List<OWLOntologyChange> changes = new ArrayList<>(addedAxioms.size() + removedAxioms.size());
+         for (OWLAxiom axiom : removedAxioms) {
+            changes.add(new RemoveAxiom(target, axiom));
+         }
+         for (OWLAxiom axiom : addedAxioms) {
+            changes.add(new AddAxiom(target, axiom));
+         }
+         if (!changes.isEmpty()) {
+            target.getOWLOntologyManager().applyChanges(changes);
+         }
+      }
+
+      @Override
+      public String toString()
+      {
+         return "Delta[added=" + addedAxioms.size() + ", removed=" + removedAxioms.size() + ", renderedRows="
+               + renderedRowCount + "]";
+      }
+   }
+}
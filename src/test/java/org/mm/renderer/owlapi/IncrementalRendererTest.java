@@ -0,0 +1,131 @@
+package org.mm.renderer.owlapi;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.is;
+import static org.semanticweb.owlapi.apibinding.OWLFunctionalSyntaxFactory.Class;
+import static org.semanticweb.owlapi.apibinding.OWLFunctionalSyntaxFactory.Declaration;
+import static org.semanticweb.owlapi.apibinding.OWLFunctionalSyntaxFactory.IRI;
+import static org.semanticweb.owlapi.apibinding.OWLFunctionalSyntaxFactory.SubClassOf;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mm.core.settings.ReferenceSettings;
+import org.mm.core.settings.ValueEncodingSetting;
+import org.mm.renderer.ExpressionPlan;
+import org.mm.renderer.IntegrationTestBase;
+import org.mm.ss.SheetRange;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+public class IncrementalRendererTest extends IntegrationTestBase
+{
+   private static final OWLClass CAR = Class(IRI(ONTOLOGY_ID, "Car"));
+   private static final OWLClass TRUCK = Class(IRI(ONTOLOGY_ID, "Truck"));
+   private static final OWLClass VAN = Class(IRI(ONTOLOGY_ID, "Van"));
+   private static final OWLClass BUS = Class(IRI(ONTOLOGY_ID, "Bus"));
+   private static final OWLClass VEHICLE = Class(IRI(ONTOLOGY_ID, "Vehicle"));
+
+   private OWLOntology ontology;
+   private ReferenceSettings settings;
+
+   @Before
+   public void setUp() throws Exception
+   {
+      ontology = createOWLOntology();
+      settings = new ReferenceSettings();
+      settings.setValueEncodingSetting(ValueEncodingSetting.RDF_ID);
+   }
+
+   @Test
+   public void TestOnlyChangedRowIsRendered() throws Exception
+   {
+      List<ExpressionPlan> plans = Arrays.asList(compileExpression("Class: @A* SubClassOf: Vehicle", settings));
+      SheetRange range = SheetRange.ofRows(SHEET1, 1, 3);
+      IncrementalRenderer renderer = new IncrementalRenderer(ontology, plans);
+
+      IncrementalRenderer.Delta first = renderer.render(createWorkbook(SHEET1,
+            createCells(createCell("Car", 1, 1), createCell("Truck", 1, 2), createCell("Bus", 1, 3))), range);
+      assertThat(first.getRenderedRowCount(), is(3));
+      assertThat(first.getAddedAxioms().size(), is(6));
+
+      IncrementalRenderer.Delta second = renderer.render(createWorkbook(SHEET1,
+            createCells(createCell("Car", 1, 1), createCell("Van", 1, 2), createCell("Bus", 1, 3))), range);
+      assertThat(second.getRenderedRowCount(), is(1));
+      assertThat(second.getAddedAxioms(), containsInAnyOrder(Declaration(VAN), SubClassOf(VAN, VEHICLE)));
+      assertThat(second.getRemovedAxioms(), containsInAnyOrder(Declaration(TRUCK), SubClassOf(TRUCK, VEHICLE)));
+   }
+
+   @Test
+   public void TestUnchangedWorkbookRendersNothing() throws Exception
+   {
+      List<ExpressionPlan> plans = Arrays.asList(compileExpression("Class: @A*", settings));
+      SheetRange range = SheetRange.ofRows(SHEET1, 1, 2);
+      IncrementalRenderer renderer = new IncrementalRenderer(ontology, plans);
+
+      renderer.render(createWorkbook(SHEET1, createCells(createCell("Car", 1, 1), createCell("Bus", 1, 2))), range);
+      IncrementalRenderer.Delta delta = renderer.render(
+            createWorkbook(SHEET1, createCells(createCell("Car", 1, 1), createCell("Bus", 1, 2))), range);
+
+      assertThat(delta.isEmpty(), is(true));
+      assertThat(delta.getRenderedRowCount(), is(0));
+   }
+
+   @Test
+   public void TestShiftedReferenceRendersRowsBelow() throws Exception
+   {
+      List<ExpressionPlan> plans = Arrays.asList(
+            compileExpression("Class: @B* SubClassOf: @A*(mm:ShiftUp)", settings));
+      SheetRange range = SheetRange.ofRows(SHEET1, 1, 3);
+      IncrementalRenderer renderer = new IncrementalRenderer(ontology, plans);
+
+      renderer.render(createWorkbook(SHEET1, createCells(createCell("Vehicle", 1, 1),
+            createCell("Car", 2, 1), createCell("Truck", 2, 2), createCell("Bus", 2, 3))), range);
+      IncrementalRenderer.Delta delta = renderer.render(createWorkbook(SHEET1, createCells(createCell("Van", 1, 1),
+            createCell("Car", 2, 1), createCell("Truck", 2, 2), createCell("Bus", 2, 3))), range);
+
+      assertThat(delta.getRenderedRowCount(), is(3));
+      assertThat(delta.getRemovedAxioms(), hasItems(
+            SubClassOf(CAR, VEHICLE), SubClassOf(TRUCK, VEHICLE), SubClassOf(BUS, VEHICLE)));
+   }
+
+   @Test
+   public void TestRangeGivenPerCall() throws Exception
+   {
+      List<ExpressionPlan> plans = Arrays.asList(compileExpression("Class: @A* SubClassOf: Vehicle", settings));
+      IncrementalRenderer renderer = new IncrementalRenderer(ontology, plans);
+
+      renderer.render(createWorkbook(SHEET1, createCells(createCell("Car", 1, 1), createCell("Truck", 1, 2))),
+            SheetRange.ofRows(SHEET1, 1, 2));
+      IncrementalRenderer.Delta appended = renderer.render(createWorkbook(SHEET1,
+            createCells(createCell("Car", 1, 1), createCell("Truck", 1, 2), createCell("Bus", 1, 3))),
+            SheetRange.ofRows(SHEET1, 1, 3));
+      assertThat(appended.getRenderedRowCount(), is(1));
+      assertThat(appended.getAddedAxioms(), containsInAnyOrder(Declaration(BUS), SubClassOf(BUS, VEHICLE)));
+
+      IncrementalRenderer.Delta shrunk = renderer.render(createWorkbook(SHEET1,
+            createCells(createCell("Car", 1, 1), createCell("Truck", 1, 2), createCell("Bus", 1, 3))),
+            SheetRange.ofRows(SHEET1, 2, 3));
+      assertThat(shrunk.getRenderedRowCount(), is(0));
+      assertThat(shrunk.getRemovedAxioms(), containsInAnyOrder(Declaration(CAR), SubClassOf(CAR, VEHICLE)));
+   }
+
+   @Test
+   public void TestUnreadColumnChangeRendersNothing() throws Exception
+   {
+      List<ExpressionPlan> plans = Arrays.asList(compileExpression("Class: @A*", settings));
+      SheetRange range = SheetRange.ofRows(SHEET1, 1, 1);
+      IncrementalRenderer renderer = new IncrementalRenderer(ontology, plans);
+
+      renderer.render(createWorkbook(SHEET1, createCells(createCell("Car", 1, 1), createCell("Red", 2, 1))), range);
+      IncrementalRenderer.Delta delta = renderer.render(
+            createWorkbook(SHEET1, createCells(createCell("Car", 1, 1), createCell("Blue", 2, 1))), range);
+
+      assertThat(delta.isEmpty(), is(true));
+      assertThat(delta.getRenderedRowCount(), is(0));
+   }
+}
@@ -0,0 +1,190 @@
+package org.mm.renderer.owlapi;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotationAssertionAxiom;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLLiteral;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyChangeListener;
+
+/**
+ * A hash index from annotation values, such as <tt>rdfs:label</tt>, to the IRIs they annotate, so a cell value can
+ * be resolved to an existing entity without scanning every annotation assertion in the ontology.
+ * <p>
+ * The index is built once from the annotation assertions of the ontology and then follows its changes as a
+ * change listener: assertions added or removed through the ontology manager, including rendered axioms, are
+ * reflected immediately. Entries are keyed by annotation property and literal text, with the subjects grouped by
+ * language tag, where the empty tag stands for a literal without one. Call {@link #close} to stop listening.
+ */
+public class LabelIndex implements OWLOntologyChangeListener, AutoCloseable
+{
+   private final OWLOntology ontology;
+   private final Map<Key, Map<String, Set<IRI>>> entries = new ConcurrentHashMap<>();
+
+   private LabelIndex(OWLOntology ontology)
+   {
+      this.ontology = ontology;
+   }
+
+   /**
+    * Registers the index with the manager of the ontology and indexes its annotation assertions.
+    */
+   public static LabelIndex build(OWLOntology ontology)
+   {
+      LabelIndex index = new LabelIndex(ontology);
+      // Listen first so assertions added during the scan are not missed; adding one twice is harmless
+      ontology.getOWLOntologyManager().addOntologyChangeListener(index);
+      for (OWLAnnotationAssertionAxiom axiom : ontology.getAxioms(AxiomType.ANNOTATION_ASSERTION)) {
+         index.add(axiom);
+      }
+      return index;
+   }
+
+   /**
+    * Returns the IRIs annotated with the given text through the property, in the given language, or in any
+    * language if the language is null. The set is an unmodifiable snapshot that later changes do not affect.
+    */
+   public Set<IRI> getSubjects(OWLAnnotationProperty property, String text, String language)
+   {
+      Map<String, Set<IRI>> subjectsByLanguage = entries.get(new Key(property.getIRI(), text));
+      if (subjectsByLanguage == null) {
+         return Collections.emptySet();
+      }
+      if (language != null) {
+         Set<IRI> subjects = subjectsByLanguage.get(language);
+         return subjects == null ? Collections.emptySet() : Collections.unmodifiableSet(new HashSet<>(subjects));
+      }
+      Set<IRI> subjects = new HashSet<>();
+      for (Set<IRI> languageSubjects : subjectsByLanguage.values()) {
+         subjects.addAll(languageSubjects);
+      }
+      return Collections.unmodifiableSet(subjects);
+   }
+
+   /**
+    * Returns the entities of the ontology signature annotated with the given text, see {@link #getSubjects}.
+    */
+   public Set<OWLEntity> getEntities(OWLAnnotationProperty property, String text, String language)
+   {
+      Set<OWLEntity> entities = new HashSet<>();
+      for (IRI subject : getSubjects(property, text, language)) {
+         entities.addAll(ontology.getEntitiesInSignature(subject));
+      }
+      return entities;
+   }
+
+   /**
+    * Returns the number of distinct property and text pairs in the index.
+    */
+   public int size()
+   {
+      return entries.size();
+   }
+
+   @Override
+   public void ontologiesChanged(List<? extends OWLOntologyChange> changes)
+   {
+      for (OWLOntologyChange change : changes) {
+         if (change.getOntology() != ontology || !change.isAxiomChange()) {
+            continue;
+         }
+         OWLAxiom axiom = change.getAxiom();
+         if (!axiom.isOfType(AxiomType.ANNOTATION_ASSERTION)) {
+            continue;
+         }
+         if (change.isAddAxiom()) {
+            add((OWLAnnotationAssertionAxiom) axiom);
+         } else if (change.isRemoveAxiom()) {
+            remove((OWLAnnotationAssertionAxiom) axiom);
+         }
+      }
+   }
+
+   @Override
+   public void close()
+   {
+      ontology.getOWLOntologyManager().removeOntologyChangeListener(this);
+   }
+
+   private void add(OWLAnnotationAssertionAxiom axiom)
+   {
+      if (!isIndexed(axiom)) {
+         return;
+      }
+      OWLLiteral literal = (OWLLiteral) axiom.getValue();
+      entries.computeIfAbsent(new Key(axiom.getProperty().getIRI(), literal.getLiteral()),
+            key -> new ConcurrentHashMap<>())
+            .computeIfAbsent(literal.getLang(), language -> ConcurrentHashMap.newKeySet())
+            .add((IRI) axiom.getSubject());
+   }
+
+   private void remove(OWLAnnotationAssertionAxiom axiom)
+   {
+      if (!isIndexed(axiom)) {
+         return;
+      }
+      OWLLiteral literal = (OWLLiteral) axiom.getValue();
+      entries.computeIfPresent(new Key(axiom.getProperty().getIRI(), literal.getLiteral()),
+            (key, subjectsByLanguage) -> {
+               Set<IRI> subjects = subjectsByLanguage.get(literal.getLang());
+               if (subjects != null) {
+                  subjects.remove(axiom.getSubject());
+                  if (subjects.isEmpty()) {
+                     subjectsByLanguage.remove(literal.getLang());
+                  }
+               }
+               return subjectsByLanguage.isEmpty() ? null : subjectsByLanguage;
+            });
+   }
+
+   /*
+    * Only literal values on named subjects can resolve a cell value to an entity.
+    */
+   private static boolean isIndexed(OWLAnnotationAssertionAxiom axiom)
+   {
+      return axiom.getSubject() instanceof IRI && axiom.getValue() instanceof OWLLiteral;
+   }
+
+   private static class Key
+   {
+      private final IRI property;
+      private final String text;
+
+      private Key(IRI property, String text)
+      {
+         this.property = property;
+         this.text = text;
+      }
+
+      @Override
+      public boolean equals(Object o)
+      {
+         if (this == o) {
+            return true;
+         }
+         if (!(o instanceof Key)) {
+            return false;
+         }
+         Key other = (Key) o;
+         return property.equals(other.property) && text.equals(other.text);
+      }
+
+      @Override
+      public int hashCode()
+      {
+         return Objects.hash(property, text);
+      }
+   }
+}
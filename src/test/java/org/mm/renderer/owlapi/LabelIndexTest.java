@@ -0,0 +1,112 @@
+package org.mm.renderer.owlapi;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.semanticweb.owlapi.apibinding.OWLFunctionalSyntaxFactory.Class;
+import static org.semanticweb.owlapi.apibinding.OWLFunctionalSyntaxFactory.IRI;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mm.renderer.IntegrationTestBase;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotationAssertionAxiom;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.RemoveAxiom;
+
+public class LabelIndexTest extends IntegrationTestBase
+{
+   private static final IRI CAR = IRI(ONTOLOGY_ID, "Car");
+   private static final IRI AUTO = IRI(ONTOLOGY_ID, "Auto");
+
+   private OWLOntology ontology;
+   private OWLDataFactory dataFactory;
+   private OWLAnnotationProperty rdfsLabel;
+
+   @Before
+   public void setUp() throws Exception
+   {
+      ontology = createOWLOntology();
+      dataFactory = ontology.getOWLOntologyManager().getOWLDataFactory();
+      rdfsLabel = dataFactory.getRDFSLabel();
+   }
+
+   @Test
+   public void TestExistingLabelsIndexed() throws Exception
+   {
+      declareOWLClass(ontology, "Car");
+      createRDFSLabelAnnotationAxiom(ontology, CAR.toString(), "Car");
+
+      try (LabelIndex index = LabelIndex.build(ontology)) {
+         assertThat(index.getSubjects(rdfsLabel, "Car", ""), contains(CAR));
+         assertThat(index.getEntities(rdfsLabel, "Car", null), contains(Class(CAR)));
+         assertThat(index.getSubjects(rdfsLabel, "Truck", null).isEmpty(), is(true));
+      }
+   }
+
+   @Test
+   public void TestLabelsByLanguage() throws Exception
+   {
+      try (LabelIndex index = LabelIndex.build(ontology)) {
+         addLabel(CAR, "Wagen", "de");
+         addLabel(AUTO, "Wagen", "");
+
+         assertThat(index.getSubjects(rdfsLabel, "Wagen", "de"), contains(CAR));
+         assertThat(index.getSubjects(rdfsLabel, "Wagen", ""), contains(AUTO));
+         assertThat(index.getSubjects(rdfsLabel, "Wagen", null), containsInAnyOrder(CAR, AUTO));
+      }
+   }
+
+   @Test
+   public void TestRemovedLabelDropped() throws Exception
+   {
+      try (LabelIndex index = LabelIndex.build(ontology)) {
+         OWLAnnotationAssertionAxiom axiom = addLabel(CAR, "Car", "");
+         assertThat(index.size(), is(1));
+
+         ontology.getOWLOntologyManager().applyChanges(Arrays.asList(new RemoveAxiom(ontology, axiom)));
+         assertThat(index.getSubjects(rdfsLabel, "Car", null).isEmpty(), is(true));
+         assertThat(index.size(), is(0));
+      }
+   }
+
+   @Test
+   public void TestSubjectsAreSnapshots() throws Exception
+   {
+      try (LabelIndex index = LabelIndex.build(ontology)) {
+         addLabel(CAR, "Wagen", "de");
+         Set<IRI> inLanguage = index.getSubjects(rdfsLabel, "Wagen", "de");
+         Set<IRI> inAnyLanguage = index.getSubjects(rdfsLabel, "Wagen", null);
+         addLabel(AUTO, "Wagen", "de");
+
+         assertThat(inLanguage, contains(CAR));
+         assertThat(inAnyLanguage, contains(CAR));
+         assertThat(isUnmodifiable(inLanguage), is(true));
+         assertThat(isUnmodifiable(inAnyLanguage), is(true));
+      }
+   }
+
+   private OWLAnnotationAssertionAxiom addLabel(IRI subject, String label, String language)
+   {
+      OWLAnnotationAssertionAxiom axiom = dataFactory.getOWLAnnotationAssertionAxiom(rdfsLabel, subject,
+            dataFactory.getOWLLiteral(label, language));
+      addOWLAxioms(ontology, axiom);
+      return axiom;
+   }
+
+   private static boolean isUnmodifiable(Set<IRI> subjects)
+   {
+      try {
+         subjects.add(AUTO);
+         return false;
+      } catch (UnsupportedOperationException e) {
+         return true;
+      }
+   }
+}
@@ -0,0 +1,117 @@
+package org.mm.renderer.owlapi;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.semanticweb.owlapi.model.AddAxiom;
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+
+/**
+ * An {@link AxiomSink} that adds rendered axioms to an ontology in chunks, one
+ * {@link org.semanticweb.owlapi.model.OWLOntologyManager#applyChanges} call per chunk, rather than one
+ * <tt>addAxiom</tt> call per axiom, so change listeners are notified and the manager's per-call bookkeeping is
+ * done once per chunk. The ontology's own indexes are still updated axiom by axiom.
+ * <p>
+ * Declarations are repeated whenever several rows refer to the same entity; a declaration already in the
+ * ontology or pending in the current chunk is dropped before it reaches the change set. Only the pending chunk's
+ * declarations are held by the sink, so its memory is bounded by the chunk size. The last partial chunk is
+ * committed on {@link #flush}.
+ */
+public class OntologyCommitSink implements AxiomSink
+{
+   public static final int DEFAULT_CHUNK_SIZE = 10000;
+
+   private final OWLOntology ontology;
+   private final int chunkSize;
+
+   private final List<OWLOntologyChange> pending;
+   private final Set<OWLAxiom> pendingDeclarations = new HashSet<>();
+
+   private long committedCount = 0;
+   private long chunkCount = 0;
+   private long duplicateDeclarationCount = 0;
+
+   public OntologyCommitSink(OWLOntology ontology)
+   {
+      this(ontology, DEFAULT_CHUNK_SIZE);
+   }
+
+   public OntologyCommitSink(OWLOntology ontology, int chunkSize)
+   {
+      if (chunkSize < 1) {
+         throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+      }
+      this.ontology = ontology;
+      this.chunkSize = chunkSize;
+      this.pending = new ArrayList<>(Math.min(chunkSize, DEFAULT_CHUNK_SIZE));
+   }
+
+   @Override
+   public void accept(int expressionIndex, int rowNumber, OWLAxiom axiom)
+   {
+      add(axiom);
+   }
+
+   /**
+    * Queues an axiom for the next chunk, committing the chunk once it is full.
+    */
+   public void add(OWLAxiom axiom)
+   {
+      if (axiom.isOfType(AxiomType.DECLARATION)
+            && (ontology.containsAxiom(axiom) || !pendingDeclarations.add(axiom))) {
+         duplicateDeclarationCount++;
+         return;
+      }
+      pending.add(new AddAxiom(ontology, axiom));
+      if (pending.size() >= chunkSize) {
+         commit();
+      }
+   }
+
+   @Override
+   public void flush()
+   {
+      if (!pending.isEmpty()) {
+         commit();
+      }
+   }
+
+   /**
+    * Returns the number of axioms passed to the ontology manager so far.
+    */
+   public long getCommittedCount()
+   {
+      return committedCount;
+   }
+
+   public long getChunkCount()
+   {
+      return chunkCount;
+   }
+
+   public long getDuplicateDeclarationCount()
+   {
+      return duplicateDeclarationCount;
+   }
+
+   @Override
+   public String toString()
+   {
+      return "OntologyCommitSink[committed=" + committedCount + ", chunks=" + chunkCount + ", duplicateDeclarations="
+            + duplicateDeclarationCount + ", pending=" + pending.size() + "]";
+   }
+
+   private void commit()
+   {
+      ontology.getOWLOntologyManager().applyChanges(new ArrayList<>(pending));
+      committedCount += pending.size();
+      chunkCount++;
+      pending.clear();
+      pendingDeclarations.clear(); // Committed declarations are now found in the ontology
+   }
+}
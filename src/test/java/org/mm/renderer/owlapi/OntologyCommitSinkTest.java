@@ -0,0 +1,119 @@
+package org.mm.renderer.owlapi;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.semanticweb.owlapi.apibinding.OWLFunctionalSyntaxFactory.Class;
+import static org.semanticweb.owlapi.apibinding.OWLFunctionalSyntaxFactory.Declaration;
+import static org.semanticweb.owlapi.apibinding.OWLFunctionalSyntaxFactory.IRI;
+import static org.semanticweb.owlapi.apibinding.OWLFunctionalSyntaxFactory.SubClassOf;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mm.renderer.IntegrationTestBase;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+public class OntologyCommitSinkTest extends IntegrationTestBase
+{
+   private static final OWLClass CAR = Class(IRI(ONTOLOGY_ID, "Car"));
+   private static final OWLClass TRUCK = Class(IRI(ONTOLOGY_ID, "Truck"));
+   private static final OWLClass VEHICLE = Class(IRI(ONTOLOGY_ID, "Vehicle"));
+   private static final int MODEL_COUNT = 10000;
+
+   private OWLOntology ontology;
+   private final List<Integer> changeSetSizes = new ArrayList<>();
+
+   @Before
+   public void setUp() throws Exception
+   {
+      ontology = createOWLOntology();
+      ontology.getOWLOntologyManager().addOntologyChangeListener(changes -> changeSetSizes.add(changes.size()));
+   }
+
+   @Test
+   public void TestAxiomsCommittedInChunks() throws Exception
+   {
+      OntologyCommitSink sink = new OntologyCommitSink(ontology, 2);
+      sink.accept(0, 1, Declaration(CAR));
+      sink.accept(0, 1, SubClassOf(CAR, VEHICLE));
+      sink.accept(0, 2, Declaration(TRUCK));
+      assertThat(changeSetSizes.size(), is(1));
+
+      sink.flush();
+      assertThat(sink.getChunkCount(), is(2L));
+      assertThat(sink.getCommittedCount(), is(3L));
+      assertThat(ontology.containsAxiom(Declaration(TRUCK)), is(true));
+   }
+
+   @Test
+   public void TestRepeatedDeclarationsDropped() throws Exception
+   {
+      OntologyCommitSink sink = new OntologyCommitSink(ontology);
+      sink.accept(0, 1, Declaration(VEHICLE));
+      sink.accept(0, 1, SubClassOf(CAR, VEHICLE));
+      sink.accept(0, 2, Declaration(VEHICLE));
+      sink.accept(0, 2, SubClassOf(TRUCK, VEHICLE));
+      sink.flush();
+
+      assertThat(sink.getDuplicateDeclarationCount(), is(1L));
+      assertThat(sink.getCommittedCount(), is(3L));
+      assertThat(changeSetSizes.size(), is(1));
+   }
+
+   @Test
+   public void TestDeclarationCommittedInEarlierChunkDropped() throws Exception
+   {
+      OntologyCommitSink sink = new OntologyCommitSink(ontology, 1);
+      sink.accept(0, 1, Declaration(CAR));
+      sink.accept(0, 2, Declaration(CAR));
+      sink.flush();
+
+      assertThat(sink.getDuplicateDeclarationCount(), is(1L));
+      assertThat(sink.getCommittedCount(), is(1L));
+   }
+
+   @Test
+   public void TestChunkedCommitAgainstPerAxiomAdds() throws Exception
+   {
+      List<OWLAxiom> axioms = new ArrayList<>();
+      for (int i = 0; i < MODEL_COUNT; i++) {
+         OWLClass model = Class(IRI(ONTOLOGY_ID, "Model" + i));
+         axioms.add(Declaration(model));
+         axioms.add(SubClassOf(model, VEHICLE));
+      }
+
+      List<Integer> perAxiomChangeSets = new ArrayList<>();
+      OWLOntology perAxiom = OWLManager.createOWLOntologyManager().createOntology();
+      perAxiom.getOWLOntologyManager().addOntologyChangeListener(changes -> perAxiomChangeSets.add(changes.size()));
+      long perAxiomNanos = System.nanoTime();
+      for (OWLAxiom axiom : axioms) {
+         perAxiom.getOWLOntologyManager().addAxiom(perAxiom, axiom);
+      }
+      perAxiomNanos = System.nanoTime() - perAxiomNanos;
+
+      List<Integer> chunkedChangeSets = new ArrayList<>();
+      OWLOntology chunked = OWLManager.createOWLOntologyManager().createOntology();
+      chunked.getOWLOntologyManager().addOntologyChangeListener(changes -> chunkedChangeSets.add(changes.size()));
+      long chunkedNanos = System.nanoTime();
+      OntologyCommitSink sink = new OntologyCommitSink(chunked);
+      for (OWLAxiom axiom : axioms) {
+         sink.add(axiom);
+      }
+      sink.flush();
+      chunkedNanos = System.nanoTime() - chunkedNanos;
+
+      assertThat(chunked.getAxioms(), is(equalTo(perAxiom.getAxioms())));
+      // The exact measure of the saving: one listener notification per chunk instead of one per axiom
+      assertThat(perAxiomChangeSets.size(), is(axioms.size()));
+      assertThat(chunkedChangeSets.size(), is(axioms.size() / OntologyCommitSink.DEFAULT_CHUNK_SIZE));
+      // Wall time is only loosely bounded, as the loops run once without warm-up
+      assertThat(chunkedNanos, is(lessThan(2 * perAxiomNanos)));
+   }
+}
@@ -0,0 +1,235 @@
+package org.mm.renderer.owlapi;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.mm.core.OWLAPIOntology;
+import org.mm.exceptions.MappingMasterException;
+import org.mm.renderer.ExpressionPlan;
+import org.mm.ss.SheetOccupancy;
+import org.mm.ss.SheetRange;
+import org.mm.ss.SpreadSheetDataSource;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.parameters.OntologyCopy;
+
+/**
+ * Renders a sheet on several threads. The rows of the range are split into consecutive chunks, and each chunk is
+ * rendered by a worker thread. Neither POI workbooks nor ontologies from a plain OWL API manager are safe to read
+ * from several threads, so before rendering starts each worker is given its own copy of the workbook, read back
+ * from the bytes it writes, and a shallow copy of the ontology in a manager of its own, along with its own
+ * {@link SpreadSheetDataSource}. The copies cost memory in proportion to the workbook size and the ontology's
+ * axiom count, once per thread.
+ * <p>
+ * Axioms are buffered per chunk and passed to the sink in row order as each chunk completes, so the sink sees
+ * exactly the sequence a {@link SheetRenderer} would produce. At most two chunks per thread are submitted ahead
+ * of the one being passed to the sink, which bounds the number of buffered chunks however long the range is.
+ * When some plan can skip empty rows early, the {@link SheetOccupancy} of the sheets its declaration reads is
+ * computed once and shared by the workers; otherwise none is built.
+ * <p>
+ * The workbook and the ontology are read only on the calling thread, while the copies are made, and may be
+ * modified once {@link #renderSheet} returns.
+ */
+public class ParallelSheetRenderer
+{
+   public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+   private final OWLOntology ontology;
+   private final Workbook workbook;
+   private final int threadCount;
+   private final int chunkSize;
+
+   public ParallelSheetRenderer(OWLOntology ontology, Workbook workbook, int threadCount)
+   {
+      this(ontology, workbook, threadCount, DEFAULT_CHUNK_SIZE);
+   }
+
+   public ParallelSheetRenderer(OWLOntology ontology, Workbook workbook, int threadCount, int chunkSize)
+   {
+      if (threadCount < 1) {
+         throw new IllegalArgumentException("Thread count must be positive: " + threadCount);
+      }
+      if (chunkSize < 1) {
+         throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+      }
+      this.ontology = ontology;
+      this.workbook = workbook;
+      this.threadCount = threadCount;
+      this.chunkSize = chunkSize;
+   }
+
+   public long renderSheet(SheetRange range, List<ExpressionPlan> plans, AxiomSink sink)
+         throws MappingMasterException
+   {
+      List<SheetRange> chunks = split(range);
+      Set<String> skipSheetNames = SheetRenderer.getSkipSheetNames(plans, range.getSheetName());
+      SheetOccupancy occupancy = skipSheetNames.isEmpty() ? null : SheetOccupancy.of(workbook, skipSheetNames);
+      int workerCount = Math.min(threadCount, Math.max(1, chunks.size()));
+      BlockingQueue<Worker> idleWorkers = createWorkers(workerCount);
+      int maximumPending = 2 * workerCount;
+      ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+      try {
+         Deque<Future<BufferingSink>> pending = new ArrayDeque<>(maximumPending);
+         int nextChunk = 0;
+         long axiomCount = 0;
+         while (nextChunk < chunks.size() || !pending.isEmpty()) {
+            while (nextChunk < chunks.size() && pending.size() < maximumPending) {
+               ChunkTask task = new ChunkTask(chunks.get(nextChunk++), plans, occupancy, idleWorkers);
+               pending.addLast(executor.submit(task));
+            }
+            axiomCount += getResult(pending.removeFirst()).replay(sink);
+         }
+         sink.flush();
+         return axiomCount;
+      } finally {
+         executor.shutdownNow();
+      }
+   }
+
+   /**
+    * Copies the workbook and the ontology once for each worker thread. A chunk task takes a worker from the
+    * queue and puts it back when done; as there are as many workers as threads, one is always free.
+    */
+   private BlockingQueue<Worker> createWorkers(int workerCount) throws MappingMasterException
+   {
+      BlockingQueue<Worker> workers = new LinkedBlockingQueue<>();
+      try {
+         ByteArrayOutputStream workbookBytes = new ByteArrayOutputStream();
+         workbook.write(workbookBytes);
+         for (int i = 0; i < workerCount; i++) {
+            Workbook workbookCopy = WorkbookFactory.create(new ByteArrayInputStream(workbookBytes.toByteArray()));
+            OWLOntology ontologyCopy = OWLManager.createOWLOntologyManager().copyOntology(ontology,
+                  OntologyCopy.SHALLOW);
+            workers.add(new Worker(new SpreadSheetDataSource(workbookCopy), new OWLAPIOntology(ontologyCopy)));
+         }
+      } catch (IOException | OWLOntologyCreationException e) {
+         throw new MappingMasterException("Error copying the workbook and ontology for parallel rendering: "
+               + e.getMessage());
+      }
+      return workers;
+   }
+
+   private List<SheetRange> split(SheetRange range)
+   {
+      List<SheetRange> chunks = new ArrayList<>();
+      for (int start = range.getStartRowNumber(); start <= range.getEndRowNumber(); start += chunkSize) {
+         int end = Math.min(range.getEndRowNumber(), start + chunkSize - 1);
+         chunks.add(range.withRows(start, end));
+      }
+      return chunks;
+   }
+
+   private static BufferingSink getResult(Future<BufferingSink> result) throws MappingMasterException
+   {
+      try {
+         return result.get();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new MappingMasterException("Interrupted while rendering in parallel");
+      } catch (ExecutionException e) {
+         Throwable cause = e.getCause();
+         if (cause instanceof MappingMasterException) {
+            throw (MappingMasterException) cause;
+         }
+         if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+         }
+         throw new MappingMasterException("Error rendering in parallel: " + cause.getMessage());
+      }
+   }
+
+   private static class ChunkTask implements Callable<BufferingSink>
+   {
+      private final SheetRange chunk;
+      private final List<ExpressionPlan> plans;
+      private final SheetOccupancy occupancy;
+      private final BlockingQueue<Worker> idleWorkers;
+
+      private ChunkTask(SheetRange chunk, List<ExpressionPlan> plans, SheetOccupancy occupancy,
+            BlockingQueue<Worker> idleWorkers)
+      {
+         this.chunk = chunk;
+         this.plans = plans;
+         this.occupancy = occupancy;
+         this.idleWorkers = idleWorkers;
+      }
+
+      @Override
+      public BufferingSink call() throws MappingMasterException, InterruptedException
+      {
+         Worker worker = idleWorkers.take();
+         try {
+            SheetRenderer renderer = new SheetRenderer(worker.ontology, worker.dataSource, occupancy);
+            BufferingSink buffer = new BufferingSink();
+            renderer.renderSheet(chunk, plans, buffer);
+            return buffer;
+         } finally {
+            idleWorkers.add(worker);
+         }
+      }
+   }
+
+   /**
+    * One thread's copies of the workbook and the ontology. Only the thread holding it may use it.
+    */
+   private static class Worker
+   {
+      private final SpreadSheetDataSource dataSource;
+      private final OWLAPIOntology ontology;
+
+      private Worker(SpreadSheetDataSource dataSource, OWLAPIOntology ontology)
+      {
+         this.dataSource = dataSource;
+         this.ontology = ontology;
+      }
+   }
+
+   /**
+    * Holds the axioms of one chunk in the order they were rendered.
+    */
+   private static class BufferingSink implements AxiomSink
+   {
+      private final List<OWLAxiom> axioms = new ArrayList<>();
+      private int[] expressionIndexes = new int[64];
+      private int[] rowNumbers = new int[64];
+
+      @Override
+      public void accept(int expressionIndex, int rowNumber, OWLAxiom axiom)
+      {
+         int size = axioms.size();
+         if (size == rowNumbers.length) {
+            expressionIndexes = Arrays.copyOf(expressionIndexes, size * 2);
+            rowNumbers = Arrays.copyOf(rowNumbers, size * 2);
+         }
+         expressionIndexes[size] = expressionIndex;
+         rowNumbers[size] = rowNumber;
+         axioms.add(axiom);
+      }
+
+      private long replay(AxiomSink sink)
+      {
+         for (int i = 0; i < axioms.size(); i++) {
+            sink.accept(expressionIndexes[i], rowNumbers[i], axioms.get(i));
+         }
+         return axioms.size();
+      }
+   }
+}
@@ -0,0 +1,79 @@
+package org.mm.renderer.owlapi;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.poi.ss.usermodel.Workbook;
+import org.junit.Before;
+import org.junit.Test;
+import org.mm.core.OWLAPIOntology;
+import org.mm.core.settings.ReferenceSettings;
+import org.mm.core.settings.ValueEncodingSetting;
+import org.mm.renderer.ExpressionPlan;
+import org.mm.renderer.IntegrationTestBase;
+import org.mm.ss.SheetRange;
+import org.mm.ss.SpreadSheetDataSource;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+public class ParallelSheetRendererTest extends IntegrationTestBase
+{
+   private static final int ROW_COUNT = 250;
+
+   private OWLOntology ontology;
+   private ReferenceSettings settings;
+
+   @Before
+   public void setUp() throws Exception
+   {
+      ontology = createOWLOntology();
+      settings = new ReferenceSettings();
+      settings.setValueEncodingSetting(ValueEncodingSetting.RDF_ID);
+   }
+
+   @Test
+   public void TestParallelRenderingMatchesSequentialRendering() throws Exception
+   {
+      Set<Label> cells = new HashSet<>();
+      for (int row = 1; row <= ROW_COUNT; row++) {
+         cells.add(createCell("Class" + row, 1, row));
+         cells.add(createCell(row % 2 == 0 ? "Even" : "Odd", 2, row));
+      }
+      Workbook workbook = createWorkbook(SHEET1, cells);
+      List<ExpressionPlan> plans = Arrays.asList(
+            compileExpression("Class: @A* SubClassOf: @B*", settings),
+            compileExpression("Class: @B*(mm:toUpperCase)", settings));
+      SheetRange range = SheetRange.ofRows(SHEET1, 1, ROW_COUNT);
+
+      OrderedSink sequential = new OrderedSink();
+      new SheetRenderer(new OWLAPIOntology(ontology), new SpreadSheetDataSource(workbook))
+            .renderSheet(range, plans, sequential);
+
+      OrderedSink parallel = new OrderedSink();
+      long count = new ParallelSheetRenderer(ontology, workbook, 4, 16).renderSheet(range, plans, parallel);
+
+      assertThat(count, is((long) sequential.axioms.size()));
+      assertThat(parallel.axioms, is(equalTo(sequential.axioms)));
+      assertThat(parallel.rowNumbers, is(equalTo(sequential.rowNumbers)));
+   }
+
+   private static class OrderedSink implements AxiomSink
+   {
+      private final List<OWLAxiom> axioms = new ArrayList<>();
+      private final List<Integer> rowNumbers = new ArrayList<>();
+
+      @Override
+      public void accept(int expressionIndex, int rowNumber, OWLAxiom axiom)
+      {
+         axioms.add(axiom);
+         rowNumbers.add(rowNumber);
+      }
+   }
+}
@@ -0,0 +1,150 @@
+package org.mm.renderer.owlapi;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import org.mm.core.OWLAPIOntology;
+import org.mm.exceptions.MappingMasterException;
+import org.mm.renderer.ExpressionPlan;
+import org.mm.rendering.owlapi.OWLRendering;
+import org.mm.ss.ReferenceFootprint;
+import org.mm.ss.SheetOccupancy;
+import org.mm.ss.SheetRange;
+import org.mm.ss.SpreadSheetDataSource;
+import org.mm.ss.SpreadsheetLocation;
+import org.semanticweb.owlapi.model.OWLAxiom;
+
+/**
+ * Renders a block of a sheet with a list of compiled expressions, iterating the rows itself and passing each
+ * rendered axiom straight to an {@link AxiomSink} instead of collecting per-row results.
+ * <p>
+ * Given a {@link SheetOccupancy} of the workbook, the renderer drops a location before rendering when the
+ * expression's declaration reference skips empty locations, by its own <tt>mm:SkipIfEmptyLocation</tt> or by the
+ * settings default, and its cell is empty, since the expression would render nothing there. References that shift or supply a default value are always rendered.
+ */
+public class SheetRenderer
+{
+   private static final String SKIP_IF_EMPTY_LOCATION = "mm:SkipIfEmptyLocation";
+   private static final String DEFAULT_DIRECTIVE_PREFIX = "mm:Default";
+
+   private final SpreadSheetDataSource dataSource;
+   private final OWLRenderer renderer;
+   private final SheetOccupancy occupancy;
+
+   private long skippedCount = 0;
+
+   public SheetRenderer(OWLAPIOntology ontology, SpreadSheetDataSource dataSource)
+   {
+      this(ontology, dataSource, null);
+   }
+
+   public SheetRenderer(OWLAPIOntology ontology, SpreadSheetDataSource dataSource, SheetOccupancy occupancy)
+   {
+      this.dataSource = dataSource;
+      this.renderer = new OWLRenderer(ontology, dataSource);
+      this.occupancy = occupancy;
+   }
+
+   /**
+    * Renders every expression at every location of the given range and sends the resulting axioms to the sink,
+    * then flushes the sink. Returns the number of axioms sent.
+    */
+   public long renderSheet(SheetRange range, List<ExpressionPlan> plans, AxiomSink sink)
+         throws MappingMasterException
+   {
+      long axiomCount = 0;
+      String sheetName = range.getSheetName();
+      ReferenceFootprint.Reference[] skipReferences = getSkipReferences(plans, sheetName);
+      for (int rowNumber = range.getStartRowNumber(); rowNumber <= range.getEndRowNumber(); rowNumber++) {
+         for (int columnNumber = range.getStartColumnNumber(); columnNumber <= range.getEndColumnNumber(); columnNumber++) {
+            SpreadsheetLocation location = new SpreadsheetLocation(sheetName, columnNumber, rowNumber);
+            for (int expressionIndex = 0; expressionIndex < plans.size(); expressionIndex++) {
+               ReferenceFootprint.Reference skipReference = skipReferences[expressionIndex];
+               if (skipReference != null && isEmpty(skipReference, sheetName, columnNumber, rowNumber)) {
+                  skippedCount++;
+                  continue;
+               }
+               Optional<? extends OWLRendering> rendering = plans.get(expressionIndex).render(renderer, dataSource,
+                     location);
+               if (rendering.isPresent()) {
+                  for (OWLAxiom axiom : rendering.get().getOWLAxioms()) {
+                     sink.accept(expressionIndex, rowNumber, axiom);
+                     axiomCount++;
+                  }
+               }
+            }
+         }
+      }
+      sink.flush();
+      return axiomCount;
+   }
+
+   /**
+    * Returns the number of expression locations dropped without rendering because their declaration cell was
+    * empty.
+    */
+   public long getSkippedCount()
+   {
+      return skippedCount;
+   }
+
+   /**
+    * Finds, for each plan, the declaration reference whose empty cell makes the whole expression render nothing,
+    * or null if the plan cannot be rejected early.
+    */
+   private ReferenceFootprint.Reference[] getSkipReferences(List<ExpressionPlan> plans, String sheetName)
+   {
+      ReferenceFootprint.Reference[] skipReferences = new ReferenceFootprint.Reference[plans.size()];
+      if (occupancy == null) {
+         return skipReferences;
+      }
+      for (int i = 0; i < plans.size(); i++) {
+         Optional<ReferenceFootprint.Reference> declaration = plans.get(i).getFootprint().getDeclarationReference();
+         if (declaration.isPresent() && canSkipWhenEmpty(declaration.get())
+               && occupancy.hasSheet(declaration.get().resolveSheetName(sheetName))) {
+            skipReferences[i] = declaration.get();
+         }
+      }
+      return skipReferences;
+   }
+
+   /**
+    * Returns the sheets whose occupancy the given plans need for early skipping when rendering the named sheet,
+    * which is empty if no plan can be rejected early.
+    */
+   static Set<String> getSkipSheetNames(List<ExpressionPlan> plans, String sheetName)
+   {
+      Set<String> sheetNames = new LinkedHashSet<>();
+      for (ExpressionPlan plan : plans) {
+         Optional<ReferenceFootprint.Reference> declaration = plan.getFootprint().getDeclarationReference();
+         if (declaration.isPresent() && canSkipWhenEmpty(declaration.get())) {
+            sheetNames.add(declaration.get().resolveSheetName(sheetName));
+         }
+      }
+      return sheetNames;
+   }
+
+   private static boolean canSkipWhenEmpty(ReferenceFootprint.Reference reference)
+   {
+      if (!reference.getEmptyLocationDirective().filter(SKIP_IF_EMPTY_LOCATION::equals).isPresent()
+            || reference.getShiftDirection().isPresent()) {
+         return false;
+      }
+      for (String directive : reference.getDirectives()) {
+         if (directive.startsWith(DEFAULT_DIRECTIVE_PREFIX)) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private boolean isEmpty(ReferenceFootprint.Reference reference, String sheetName, int columnNumber,
+         int rowNumber)
+   {
+      return occupancy.isEmpty(reference.resolveSheetName(sheetName),
+            reference.isColumnWildcard() ? columnNumber : reference.getColumnNumber(),
+            reference.isRowWildcard() ? rowNumber : reference.getRowNumber());
+   }
+}
@@ -0,0 +1,157 @@
+package org.mm.renderer.owlapi;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.semanticweb.owlapi.apibinding.OWLFunctionalSyntaxFactory.Class;
+import static org.semanticweb.owlapi.apibinding.OWLFunctionalSyntaxFactory.Declaration;
+import static org.semanticweb.owlapi.apibinding.OWLFunctionalSyntaxFactory.IRI;
+import static org.semanticweb.owlapi.apibinding.OWLFunctionalSyntaxFactory.SubClassOf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.poi.ss.usermodel.Workbook;
+import org.junit.Before;
+import org.junit.Test;
+import org.mm.core.OWLAPIOntology;
+import org.mm.core.settings.ReferenceSettings;
+import org.mm.core.settings.ValueEncodingSetting;
+import org.mm.renderer.ExpressionPlan;
+import org.mm.renderer.IntegrationTestBase;
+import org.mm.ss.SheetOccupancy;
+import org.mm.ss.SheetRange;
+import org.mm.ss.SpreadSheetDataSource;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+public class SheetRendererTest extends IntegrationTestBase
+{
+   private static final OWLClass CAR = Class(IRI(ONTOLOGY_ID, "Car"));
+   private static final OWLClass TRUCK = Class(IRI(ONTOLOGY_ID, "Truck"));
+   private static final OWLClass BUS = Class(IRI(ONTOLOGY_ID, "Bus"));
+   private static final OWLClass VEHICLE = Class(IRI(ONTOLOGY_ID, "Vehicle"));
+
+   private OWLOntology ontology;
+   private ReferenceSettings settings;
+
+   @Before
+   public void setUp() throws Exception
+   {
+      ontology = createOWLOntology();
+      settings = new ReferenceSettings();
+      settings.setValueEncodingSetting(ValueEncodingSetting.RDF_ID);
+   }
+
+   @Test
+   public void TestRenderRowRange() throws Exception
+   {
+      Set<Label> cells = createCells(createCell("Car", 1, 1), createCell("Truck", 1, 2), createCell("Bus", 1, 3));
+      SheetRenderer renderer = createSheetRenderer(cells);
+      List<ExpressionPlan> plans = Arrays.asList(compileExpression("Class: @A* SubClassOf: Vehicle", settings));
+
+      CollectingSink sink = new CollectingSink();
+      long count = renderer.renderSheet(SheetRange.ofRows(SHEET1, 1, 3), plans, sink);
+
+      assertThat(count, is(6L));
+      assertThat(sink.axioms, containsInAnyOrder(
+            Declaration(CAR), SubClassOf(CAR, VEHICLE),
+            Declaration(TRUCK), SubClassOf(TRUCK, VEHICLE),
+            Declaration(BUS), SubClassOf(BUS, VEHICLE)));
+      assertThat(sink.flushed, is(true));
+   }
+
+   @Test
+   public void TestRenderPartialRowRange() throws Exception
+   {
+      Set<Label> cells = createCells(createCell("Car", 1, 1), createCell("Truck", 1, 2), createCell("Bus", 1, 3));
+      SheetRenderer renderer = createSheetRenderer(cells);
+      List<ExpressionPlan> plans = Arrays.asList(compileExpression("Class: @A*", settings));
+
+      CollectingSink sink = new CollectingSink();
+      renderer.renderSheet(SheetRange.ofRows(SHEET1, 2, 3), plans, sink);
+
+      assertThat(sink.axioms, contains(Declaration(TRUCK), Declaration(BUS)));
+      assertThat(sink.rowNumbers, contains(2, 3));
+   }
+
+   @Test
+   public void TestRenderColumnWildcard() throws Exception
+   {
+      Set<Label> cells = createCells(createCell("Car", 1, 1), createCell("Truck", 2, 1));
+      SheetRenderer renderer = createSheetRenderer(cells);
+      List<ExpressionPlan> plans = Arrays.asList(compileExpression("Class: @*1", settings));
+
+      CollectingSink sink = new CollectingSink();
+      renderer.renderSheet(SheetRange.ofRows(SHEET1, 1, 1).withColumns(1, 2), plans, sink);
+
+      assertThat(sink.axioms, contains(Declaration(CAR), Declaration(TRUCK)));
+   }
+
+   @Test
+   public void TestExpressionIndexIsReported() throws Exception
+   {
+      Set<Label> cells = createCells(createCell("Car", 1, 1));
+      SheetRenderer renderer = createSheetRenderer(cells);
+      List<ExpressionPlan> plans = Arrays.asList(compileExpression("Class: @A*", settings),
+            compileExpression("Class: Vehicle", settings));
+
+      CollectingSink sink = new CollectingSink();
+      renderer.renderSheet(SheetRange.ofRows(SHEET1, 1, 1), plans, sink);
+
+      assertThat(sink.axioms, hasSize(2));
+      assertThat(sink.expressionIndexes, contains(0, 1));
+   }
+
+   @Test
+   public void TestEmptyDeclarationSkippedBeforeRendering() throws Exception
+   {
+      Set<Label> cells = createCells(createCell("Car", 1, 1), createCell("Bus", 1, 3));
+      Workbook workbook = createWorkbook(SHEET1, cells);
+      SheetRenderer renderer = new SheetRenderer(new OWLAPIOntology(ontology), new SpreadSheetDataSource(workbook),
+            SheetOccupancy.of(workbook));
+      List<ExpressionPlan> plans = Arrays.asList(
+            compileExpression("Class: @A*(mm:SkipIfEmptyLocation) SubClassOf: Vehicle", settings));
+
+      CollectingSink sink = new CollectingSink();
+      renderer.renderSheet(SheetRange.ofRows(SHEET1, 1, 3), plans, sink);
+
+      assertThat(sink.axioms, containsInAnyOrder(
+            Declaration(CAR), SubClassOf(CAR, VEHICLE),
+            Declaration(BUS), SubClassOf(BUS, VEHICLE)));
+      assertThat(renderer.getSkippedCount(), is(1L));
+   }
+
+   private SheetRenderer createSheetRenderer(Set<Label> cells) throws Exception
+   {
+      SpreadSheetDataSource dataSource = createSpreadsheetDataSource(SHEET1, cells);
+      return new SheetRenderer(new OWLAPIOntology(ontology), dataSource);
+   }
+
+   private static class CollectingSink implements AxiomSink
+   {
+      private final List<OWLAxiom> axioms = new ArrayList<>();
+      private final List<Integer> expressionIndexes = new ArrayList<>();
+      private final List<Integer> rowNumbers = new ArrayList<>();
+      private boolean flushed = false;
+
+      @Override
+      public void accept(int expressionIndex, int rowNumber, OWLAxiom axiom)
+      {
+         axioms.add(axiom);
+         expressionIndexes.add(expressionIndex);
+         rowNumbers.add(rowNumber);
+      }
+
+      @Override
+      public void flush()
+      {
+         flushed = true;
+      }
+   }
+}
@@ -0,0 +1,113 @@
+package org.mm.ss;
+
+import java.util.List;
+
+/**
+ * Cell addresses packed into a primitive <tt>long</tt>, so that references can be resolved and shifted without
+ * allocating a {@link SpreadsheetLocation} per step. The sheet is identified by its index in the workbook rather
+ * than by name. Row numbers occupy the low 32 bits, column numbers the next 20 bits and the sheet index the 11
+ * bits above those, leaving the sign bit clear so that no address collides with {@link #NONE}. Column and row
+ * numbers are 1-based, as in {@link SpreadsheetLocation}.
+ * <p>
+ * A {@link SpreadsheetLocation} is only materialised with {@link #toLocation} where an address leaves this
+ * package, for example when it is handed to a renderer or reported in an error message.
+ */
+public final class CellAddress
+{
+   /**
+    * Stands for no cell, e.g. when a shift runs off the edge of the sheet.
+    */
+   public static final long NONE = -1L;
+
+   public static final int MAX_SHEET_INDEX = (1 << 11) - 1;
+   public static final int MAX_COLUMN_NUMBER = (1 << 20) - 1;
+
+   private static final int COLUMN_SHIFT = 32;
+   private static final int SHEET_SHIFT = 52;
+   private static final long ROW_MASK = 0xFFFFFFFFL;
+   private static final long COLUMN_MASK = MAX_COLUMN_NUMBER;
+
+   private CellAddress()
+   {
+      // NO-OP
+   }
+
+   public static long pack(int sheetIndex, int columnNumber, int rowNumber)
+   {
+      if (sheetIndex < 0 || sheetIndex > MAX_SHEET_INDEX) {
+         throw new IllegalArgumentException("Invalid sheet index " + sheetIndex);
+      }
+      if (columnNumber < 1 || columnNumber > MAX_COLUMN_NUMBER) {
+         throw new IllegalArgumentException("Invalid column number " + columnNumber);
+      }
+      if (rowNumber < 1) {
+         throw new IllegalArgumentException("Invalid row number " + rowNumber);
+      }
+      return ((long) sheetIndex << SHEET_SHIFT) | ((long) columnNumber << COLUMN_SHIFT) | rowNumber;
+   }
+
+   public static int getSheetIndex(long address)
+   {
+      return (int) (address >>> SHEET_SHIFT);
+   }
+
+   public static int getColumnNumber(long address)
+   {
+      return (int) ((address >>> COLUMN_SHIFT) & COLUMN_MASK);
+   }
+
+   public static int getRowNumber(long address)
+   {
+      return (int) (address & ROW_MASK);
+   }
+
+   public static long withColumn(long address, int columnNumber)
+   {
+      return pack(getSheetIndex(address), columnNumber, getRowNumber(address));
+   }
+
+   public static long withRow(long address, int rowNumber)
+   {
+      return pack(getSheetIndex(address), getColumnNumber(address), rowNumber);
+   }
+
+   /**
+    * Returns the address of the neighbouring cell in the given direction, or {@link #NONE} if that would leave
+    * the sheet.
+    */
+   public static long step(long address, ShiftDirection direction)
+   {
+      int columnNumber = getColumnNumber(address) + direction.getColumnStep();
+      int rowNumber = getRowNumber(address) + direction.getRowStep();
+      if (columnNumber < 1 || columnNumber > MAX_COLUMN_NUMBER || rowNumber < 1) {
+         return NONE;
+      }
+      return pack(getSheetIndex(address), columnNumber, rowNumber);
+   }
+
+   public static long of(SpreadsheetLocation location, int sheetIndex)
+   {
+      return pack(sheetIndex, location.getPhysicalColumnNumber(), location.getPhysicalRowNumber());
+   }
+
+   /**
+    * Materialises the address as a location, looking up the sheet name by index.
+    */
+   public static SpreadsheetLocation toLocation(long address, List<String> sheetNames)
+   {
+      return new SpreadsheetLocation(sheetNames.get(getSheetIndex(address)), getColumnNumber(address),
+            getRowNumber(address));
+   }
+
+   /**
+    * Formats the address in cell reference notation, e.g. <tt>Sheet1!B3</tt>.
+    */
+   public static String toString(long address, List<String> sheetNames)
+   {
+      if (address == NONE) {
+         return "(none)";
+      }
+      return sheetNames.get(getSheetIndex(address)) + "!" + ReferenceFootprint.columnName(getColumnNumber(address))
+            + getRowNumber(address);
+   }
+}
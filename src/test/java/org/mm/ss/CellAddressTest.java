@@ -0,0 +1,63 @@
+package org.mm.ss;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+public class CellAddressTest
+{
+   private static final List<String> SHEET_NAMES = Arrays.asList("Sheet1", "Sheet2");
+
+   @Test
+   public void TestPackAndUnpack()
+   {
+      long address = CellAddress.pack(1, 16384, 1048576);
+
+      assertThat(CellAddress.getSheetIndex(address), is(1));
+      assertThat(CellAddress.getColumnNumber(address), is(16384));
+      assertThat(CellAddress.getRowNumber(address), is(1048576));
+      assertThat(CellAddress.pack(CellAddress.MAX_SHEET_INDEX, CellAddress.MAX_COLUMN_NUMBER, Integer.MAX_VALUE) > 0,
+            is(true));
+   }
+
+   @Test
+   public void TestStep()
+   {
+      long address = CellAddress.pack(0, 2, 1);
+
+      assertThat(CellAddress.getColumnNumber(CellAddress.step(address, ShiftDirection.LEFT)), is(1));
+      assertThat(CellAddress.getRowNumber(CellAddress.step(address, ShiftDirection.DOWN)), is(2));
+      assertThat(CellAddress.step(address, ShiftDirection.UP), is(CellAddress.NONE));
+   }
+
+   @Test
+   public void TestFormat()
+   {
+      assertThat(CellAddress.toString(CellAddress.pack(1, 28, 3), SHEET_NAMES), is("Sheet2!AB3"));
+   }
+
+   @Test
+   public void TestResolveWithShift()
+   {
+      Workbook workbook = new XSSFWorkbook();
+      workbook.createSheet("Sheet1").createRow(0).createCell(1).setCellValue("Car");
+      workbook.createSheet("Sheet2").createRow(1).createCell(0).setCellValue("Vehicle");
+      ColumnarWorkbook columnar = ColumnarWorkbook.of(workbook);
+
+      ReferenceFootprint footprint = ReferenceFootprint.of("Class: @A* SubClassOf: @B*(mm:ShiftUp), @'Sheet2'!A2");
+      ReferenceFootprint.Reference shifted = footprint.getReferences().get(1);
+      ReferenceFootprint.Reference otherSheet = footprint.getReferences().get(2);
+      ReferenceFootprint.Reference emptyColumn = ReferenceFootprint.of("Class: @C*(mm:ShiftUp)").getReferences().get(0);
+      long current = CellAddress.pack(0, 1, 5);
+
+      assertThat(columnar.getValue(columnar.resolve(shifted, current)), is("Car"));
+      assertThat(columnar.getValue(columnar.resolve(otherSheet, current)), is("Vehicle"));
+      assertThat(columnar.resolve(emptyColumn, current), is(CellAddress.NONE));
+   }
+}
@@ -0,0 +1,522 @@
+package org.mm.ss;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.mm.ss.StreamingSheetReader.SheetRow;
+
+/**
+ * A read-only snapshot of one sheet held column by column in primitive arrays. Each column is an <tt>int[]</tt>
+ * indexed by row, holding 0 for an empty cell, a positive {@link StringDictionary} code for a text cell, or a
+ * negative index into the column's <tt>double[]</tt> of numeric values. Any cell is found in constant time, and
+ * the sheet costs four bytes per cell, plus eight per numeric cell, rather than a row and cell object per cell
+ * as in POI's model.
+ * <p>
+ * Cell text is taken as POI's {@link DataFormatter} displays it. A numeric cell is kept as a number only when its
+ * displayed text is the plain rendering of the value, so {@link #getValue} returns exactly the text of the
+ * original cell either way. A number displayed through a format, such as a date, is kept as its text, and its
+ * value and format string are recorded beside it, as is the value of a boolean cell, so that the original cell
+ * can be rebuilt (see {@link WorkbookSnapshot#toWorkbook()}). These typed cells are expected to be few and are
+ * held in a separate sorted table rather than per column.
+ */
+public class ColumnarSheet
+{
+   private static final int[] NO_CODES = new int[0];
+
+   /**
+    * Format code of a typed boolean cell. Number formats are stored by their dictionary code, which is positive.
+    */
+   static final int BOOLEAN_FORMAT = 0;
+
+   private final String sheetName;
+   private final StringDictionary dictionary;
+   private final int rowCount;
+   private final int[][] columns;
+   private final double[][] numbers;
+   private final long cellCount;
+   private final TypedCells typedCells;
+   private final NonEmptyIndex nonEmptyIndex;
+
+   private ColumnarSheet(String sheetName, StringDictionary dictionary, int rowCount, int[][] columns,
+         double[][] numbers, long cellCount, TypedCells typedCells)
+   {
+      this.sheetName = sheetName;
+      this.dictionary = dictionary;
+      this.rowCount = rowCount;
+      this.columns = columns;
+      this.numbers = numbers;
+      this.cellCount = cellCount;
+      this.typedCells = typedCells;
+      this.nonEmptyIndex = new NonEmptyIndex(this);
+   }
+
+   /**
+    * Wraps column arrays read back from a binary snapshot; see {@link WorkbookSnapshot}.
+    */
+   static ColumnarSheet of(String sheetName, StringDictionary dictionary, int rowCount, int[][] columns,
+         double[][] numbers, long cellCount, TypedCells typedCells)
+   {
+      return new ColumnarSheet(sheetName, dictionary, rowCount, columns, numbers, cellCount, typedCells);
+   }
+
+   /**
+    * Snapshots a POI sheet, adding its text to the given dictionary.
+    */
+   public static ColumnarSheet of(Sheet sheet, StringDictionary dictionary)
+   {
+      return of(sheet, dictionary, null);
+   }
+
+   /**
+    * Snapshots the given 1-based columns of a POI sheet, or every column if the set is null, adding their text to
+    * the given dictionary. Other columns are left empty and their cells are not visited.
+    */
+   public static ColumnarSheet of(Sheet sheet, StringDictionary dictionary, BitSet columnNumbers)
+   {
+      DataFormatter formatter = new DataFormatter();
+      Builder builder = new Builder(sheet.getSheetName(), dictionary);
+      for (Row row : sheet) {
+         if (columnNumbers == null) {
+            for (Cell cell : row) {
+               addCell(builder, formatter, cell);
+            }
+         } else {
+            for (int columnNumber = columnNumbers.nextSetBit(1); columnNumber >= 0;
+                  columnNumber = columnNumbers.nextSetBit(columnNumber + 1)) {
+               Cell cell = row.getCell(columnNumber - 1);
+               if (cell != null) {
+                  addCell(builder, formatter, cell);
+               }
+            }
+         }
+      }
+      return builder.build();
+   }
+
+   private static void addCell(Builder builder, DataFormatter formatter, Cell cell)
+   {
+      String text = formatter.formatCellValue(cell);
+      if (text == null || text.isEmpty()) {
+         return;
+      }
+      int columnNumber = cell.getColumnIndex() + 1;
+      int rowNumber = cell.getRowIndex() + 1;
+      CellType type = cell.getCellType() == CellType.FORMULA ? cell.getCachedFormulaResultType() : cell.getCellType();
+      if (type == CellType.NUMERIC) {
+         double number = cell.getNumericCellValue();
+         if (formatNumber(number).equals(text)) {
+            builder.setNumber(columnNumber, rowNumber, number);
+         } else {
+            builder.setFormattedNumber(columnNumber, rowNumber, text, number,
+                  cell.getCellStyle().getDataFormatString());
+         }
+      } else if (type == CellType.BOOLEAN) {
+         builder.setBoolean(columnNumber, rowNumber, text, cell.getBooleanCellValue());
+      } else {
+         builder.setText(columnNumber, rowNumber, text);
+      }
+   }
+
+   /**
+    * Snapshots a sheet read forward from a row source, without building it in POI first. Values are held as
+    * text, or as typed cells where the source records raw values and number formats, as a
+    * {@link StreamingSheetReader} built to record types does.
+    */
+   public static ColumnarSheet read(SheetRowSource source, String sheetName, StringDictionary dictionary)
+         throws IOException
+   {
+      Builder builder = new Builder(sheetName, dictionary);
+      source.read(sheetName, (SheetRow row) -> {
+         for (int columnNumber = 1; columnNumber <= row.getColumnCount(); columnNumber++) {
+            String value = row.getValue(columnNumber);
+            if (value == null || value.isEmpty()) {
+               continue;
+            }
+            Object rawValue = row.getRawValue(columnNumber);
+            if (rawValue instanceof Double) {
+               double number = (Double) rawValue;
+               if (formatNumber(number).equals(value)) {
+                  builder.setNumber(columnNumber, row.getRowNumber(), number);
+               } else {
+                  builder.setFormattedNumber(columnNumber, row.getRowNumber(), value, number,
+                        row.getNumberFormat(columnNumber));
+               }
+            } else if (rawValue instanceof Boolean) {
+               builder.setBoolean(columnNumber, row.getRowNumber(), value, (Boolean) rawValue);
+            } else {
+               builder.setText(columnNumber, row.getRowNumber(), value);
+            }
+         }
+      });
+      return builder.build();
+   }
+
+   public String getSheetName()
+   {
+      return sheetName;
+   }
+
+   /**
+    * Returns the 1-based number of the last row holding a value.
+    */
+   public int getRowCount()
+   {
+      return rowCount;
+   }
+
+   /**
+    * Returns the 1-based number of the last column holding a value.
+    */
+   public int getColumnCount()
+   {
+      return columns.length;
+   }
+
+   /**
+    * Returns the number of non-empty cells.
+    */
+   public long getCellCount()
+   {
+      return cellCount;
+   }
+
+   /**
+    * Returns the text of the cell at the given 1-based column and row, or null if the cell is empty or outside
+    * the sheet.
+    */
+   public String getValue(int columnNumber, int rowNumber)
+   {
+      int code = getCode(columnNumber, rowNumber);
+      if (code > 0) {
+         return dictionary.decode(code);
+      } else if (code < 0) {
+         return formatNumber(numbers[columnNumber - 1][-code - 1]);
+      }
+      return null;
+   }
+
+   public String getValue(SpreadsheetLocation location)
+   {
+      if (!sheetName.equals(location.getSheetName())) {
+         throw new IllegalArgumentException("Location " + location + " is not in sheet '" + sheetName + "'");
+      }
+      return getValue(location.getPhysicalColumnNumber(), location.getPhysicalRowNumber());
+   }
+
+   public boolean isEmpty(int columnNumber, int rowNumber)
+   {
+      return getCode(columnNumber, rowNumber) == 0;
+   }
+
+   public boolean isNumeric(int columnNumber, int rowNumber)
+   {
+      return getCode(columnNumber, rowNumber) < 0;
+   }
+
+   /**
+    * Returns the value of a numeric cell.
+    *
+    * @throws IllegalStateException
+    *            If the cell does not hold a number
+    */
+   public double getNumericValue(int columnNumber, int rowNumber)
+   {
+      int code = getCode(columnNumber, rowNumber);
+      if (code >= 0) {
+         throw new IllegalStateException("Cell at column " + columnNumber + ", row " + rowNumber + " in sheet '"
+               + sheetName + "' is not numeric");
+      }
+      return numbers[columnNumber - 1][-code - 1];
+   }
+
+   /**
+    * Returns the cells whose number format or boolean type is recorded beside their text.
+    */
+   TypedCells getTypedCells()
+   {
+      return typedCells;
+   }
+
+   /**
+    * Returns the index used to resolve shift directives on this sheet.
+    */
+   public NonEmptyIndex getNonEmptyIndex()
+   {
+      return nonEmptyIndex;
+   }
+
+   /**
+    * Returns the storage codes of a column, indexed by row and ending at its last non-empty row. The array must
+    * not be modified.
+    */
+   int[] getColumnCodes(int columnNumber)
+   {
+      return columns[columnNumber - 1];
+   }
+
+   /**
+    * Returns the numeric values of a column, indexed by the negated codes. The array must not be modified.
+    */
+   double[] getColumnNumbers(int columnNumber)
+   {
+      return numbers[columnNumber - 1];
+   }
+
+   /**
+    * Returns the raw storage code of a cell: 0 when empty, a dictionary code when positive, or the negated
+    * 1-based index of a numeric value.
+    */
+   int getCode(int columnNumber, int rowNumber)
+   {
+      if (columnNumber < 1 || columnNumber > columns.length) {
+         return 0;
+      }
+      int[] column = columns[columnNumber - 1];
+      return rowNumber < 1 || rowNumber > column.length ? 0 : column[rowNumber - 1];
+   }
+
+   /**
+    * Returns a rough count of the heap bytes held by the column and number arrays, excluding the shared
+    * dictionary.
+    */
+   public long getEstimatedMemoryBytes()
+   {
+      long bytes = 16L + 8L * columns.length * 2;
+      for (int i = 0; i < columns.length; i++) {
+         bytes += 16L + 4L * columns[i].length;
+         bytes += 16L + 8L * numbers[i].length;
+      }
+      return bytes + typedCells.getEstimatedMemoryBytes();
+   }
+
+   @Override
+   public String toString()
+   {
+      return String.format("ColumnarSheet[name=%s, rows=%d, columns=%d, cells=%d, bytes=%d]",
+            sheetName, rowCount, getColumnCount(), cellCount, getEstimatedMemoryBytes());
+   }
+
+   /**
+    * Renders a number the way POI displays a cell in the General format when the value is an integer or has a
+    * short decimal form.
+    */
+   static String formatNumber(double value)
+   {
+      if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+         return Long.toString((long) value);
+      }
+      return Double.toString(value);
+   }
+
+   /**
+    * A table of typed cells sorted by row and then column. Each entry holds a format code, either
+    * {@link #BOOLEAN_FORMAT} or the dictionary code of a number format string, and the cell's numeric value, 1 or
+    * 0 for a boolean.
+    */
+   static class TypedCells
+   {
+      static final TypedCells NONE = new TypedCells(new int[0], new int[0], new int[0], new double[0]);
+
+      private final int[] rowNumbers;
+      private final int[] columnNumbers;
+      private final int[] formatCodes;
+      private final double[] values;
+
+      TypedCells(int[] rowNumbers, int[] columnNumbers, int[] formatCodes, double[] values)
+      {
+         this.rowNumbers = rowNumbers;
+         this.columnNumbers = columnNumbers;
+         this.formatCodes = formatCodes;
+         this.values = values;
+      }
+
+      int size()
+      {
+         return rowNumbers.length;
+      }
+
+      int getRowNumber(int index)
+      {
+         return rowNumbers[index];
+      }
+
+      int getColumnNumber(int index)
+      {
+         return columnNumbers[index];
+      }
+
+      int getFormatCode(int index)
+      {
+         return formatCodes[index];
+      }
+
+      double getValue(int index)
+      {
+         return values[index];
+      }
+
+      private long getEstimatedMemoryBytes()
+      {
+         return size() == 0 ? 0 : 4 * 16L + 20L * size();
+      }
+   }
+
+   /**
+    * Accumulates cells in any order and packs them into a {@link ColumnarSheet}.
+    */
+   public static class Builder
+   {
+      private final String sheetName;
+      private final StringDictionary dictionary;
+
+      private int[][] columns = new int[0][];
+      private double[][] numbers = new double[0][];
+      private int[] numberCounts = new int[0];
+      private int rowCount = 0;
+      private long cellCount = 0;
+      private final Map<Long, double[]> typedCells = new TreeMap<>();
+
+      public Builder(String sheetName, StringDictionary dictionary)
+      {
+         this.sheetName = sheetName;
+         this.dictionary = dictionary;
+      }
+
+      public Builder setText(int columnNumber, int rowNumber, String value)
+      {
+         set(columnNumber, rowNumber, dictionary.encode(value));
+         return this;
+      }
+
+      public Builder setNumber(int columnNumber, int rowNumber, double value)
+      {
+         int columnIndex = ensureColumn(columnNumber);
+         double[] columnNumbers = numbers[columnIndex];
+         int count = numberCounts[columnIndex];
+         if (count == columnNumbers.length) {
+            columnNumbers = numbers[columnIndex] = Arrays.copyOf(columnNumbers, Math.max(16, count * 2));
+         }
+         columnNumbers[count] = value;
+         numberCounts[columnIndex] = count + 1;
+         set(columnNumber, rowNumber, -(count + 1));
+         return this;
+      }
+
+      /**
+       * Sets a number displayed through a format: the cell reads as the given text, and its value and format are
+       * kept as a typed cell.
+       */
+      public Builder setFormattedNumber(int columnNumber, int rowNumber, String text, double value, String format)
+      {
+         setText(columnNumber, rowNumber, text);
+         typedCells.put(typedKey(columnNumber, rowNumber), new double[] { dictionary.encode(format), value });
+         return this;
+      }
+
+      /**
+       * Sets a boolean cell, which reads as the given text.
+       */
+      public Builder setBoolean(int columnNumber, int rowNumber, String text, boolean value)
+      {
+         setText(columnNumber, rowNumber, text);
+         typedCells.put(typedKey(columnNumber, rowNumber), new double[] { BOOLEAN_FORMAT, value ? 1 : 0 });
+         return this;
+      }
+
+      public ColumnarSheet build()
+      {
+         int[][] packedColumns = new int[columns.length][];
+         double[][] packedNumbers = new double[columns.length][];
+         for (int i = 0; i < columns.length; i++) {
+            packedColumns[i] = Arrays.copyOf(columns[i], lastUsedRow(columns[i]));
+            packedNumbers[i] = Arrays.copyOf(numbers[i], numberCounts[i]);
+         }
+         return new ColumnarSheet(sheetName, dictionary, rowCount, packedColumns, packedNumbers, cellCount,
+               buildTypedCells());
+      }
+
+      private TypedCells buildTypedCells()
+      {
+         if (typedCells.isEmpty()) {
+            return TypedCells.NONE;
+         }
+         int size = typedCells.size();
+         int[] rowNumbers = new int[size];
+         int[] columnNumbers = new int[size];
+         int[] formatCodes = new int[size];
+         double[] values = new double[size];
+         int i = 0;
+         for (Map.Entry<Long, double[]> entry : typedCells.entrySet()) {
+            rowNumbers[i] = (int) (entry.getKey() >>> 32);
+            columnNumbers[i] = (int) (long) entry.getKey();
+            formatCodes[i] = (int) entry.getValue()[0];
+            values[i] = entry.getValue()[1];
+            i++;
+         }
+         return new TypedCells(rowNumbers, columnNumbers, formatCodes, values);
+      }
+
+      /**
+       * Orders typed cells by row, then column.
+       */
+      private static long typedKey(int columnNumber, int rowNumber)
+      {
+         return (long) rowNumber << 32 | columnNumber;
+      }
+
+      private static int lastUsedRow(int[] column)
+      {
+         int length = column.length;
+         while (length > 0 && column[length - 1] == 0) {
+            length--;
+         }
+         return length;
+      }
+
+      private void set(int columnNumber, int rowNumber, int code)
+      {
+         if (rowNumber < 1) {
+            throw new IllegalArgumentException("Invalid row number " + rowNumber + " in sheet " + sheetName);
+         }
+         int columnIndex = ensureColumn(columnNumber);
+         int[] column = columns[columnIndex];
+         if (rowNumber > column.length) {
+            column = columns[columnIndex] = Arrays.copyOf(column, Math.max(rowNumber, column.length * 2));
+         }
+         if (column[rowNumber - 1] == 0) {
+            cellCount++;
+         }
+         if (!typedCells.isEmpty()) {
+            typedCells.remove(typedKey(columnNumber, rowNumber)); // Replaced by an untyped value
+         }
+         column[rowNumber - 1] = code;
+         rowCount = Math.max(rowCount, rowNumber);
+      }
+
+      private int ensureColumn(int columnNumber)
+      {
+         if (columnNumber < 1) {
+            throw new IllegalArgumentException("Invalid column number " + columnNumber + " in sheet " + sheetName);
+         }
+         if (columnNumber > columns.length) {
+            int oldLength = columns.length;
+            columns = Arrays.copyOf(columns, columnNumber);
+            numbers = Arrays.copyOf(numbers, columnNumber);
+            numberCounts = Arrays.copyOf(numberCounts, columnNumber);
+            for (int i = oldLength; i < columnNumber; i++) {
+               columns[i] = NO_CODES;
+               numbers[i] = new double[0];
+            }
+         }
+         return columnNumber - 1;
+      }
+   }
+}
@@ -0,0 +1,103 @@
+package org.mm.ss;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ColumnarSheetTest
+{
+   private static final String SHEET1 = "Sheet1";
+   private static final String SHEET2 = "Sheet2";
+   private static final int ROW_COUNT = 1000000;
+
+   @Rule
+   public final TemporaryFolder folder = new TemporaryFolder();
+
+   @Test
+   public void TestTextAndNumericCells() throws Exception
+   {
+      Workbook workbook = new XSSFWorkbook();
+      Sheet sheet = workbook.createSheet(SHEET1);
+      Row row = sheet.createRow(2);
+      row.createCell(0).setCellValue("Car");
+      row.createCell(1).setCellValue(42);
+      row.createCell(2).setCellValue("42");
+
+      ColumnarSheet columnar = ColumnarSheet.of(sheet, new StringDictionary());
+
+      assertThat(columnar.getValue(new SpreadsheetLocation(SHEET1, 1, 3)), is("Car"));
+      assertThat(columnar.getValue(2, 3), is("42"));
+      assertThat(columnar.isNumeric(2, 3), is(true));
+      assertThat(columnar.getNumericValue(2, 3), is(42.0));
+      assertThat(columnar.getValue(3, 3), is("42"));
+      assertThat(columnar.isNumeric(3, 3), is(false));
+      assertThat(columnar.getValue(1, 1), is(nullValue()));
+      assertThat(columnar.getValue(9, 99), is(nullValue()));
+      assertThat(columnar.getRowCount(), is(3));
+      assertThat(columnar.getCellCount(), is(3L));
+   }
+
+   @Test
+   public void TestDictionarySharedAcrossSheets() throws Exception
+   {
+      Workbook workbook = new XSSFWorkbook();
+      workbook.createSheet(SHEET1).createRow(0).createCell(0).setCellValue("Car");
+      workbook.createSheet(SHEET2).createRow(4).createCell(3).setCellValue("Car");
+
+      ColumnarWorkbook columnar = ColumnarWorkbook.of(workbook);
+
+      assertThat(columnar.getDictionary().size(), is(1));
+      assertThat(columnar.getValue(new SpreadsheetLocation(SHEET1, 1, 1)), is("Car"));
+      assertThat(columnar.getValue(new SpreadsheetLocation(SHEET2, 4, 5)), is("Car"));
+   }
+
+   @Test
+   public void TestMillionRowStore() throws Exception
+   {
+      StringDictionary dictionary = new StringDictionary();
+      ColumnarSheet.Builder builder = new ColumnarSheet.Builder(SHEET1, dictionary);
+      for (int row = 1; row <= ROW_COUNT; row++) {
+         builder.setText(1, row, row % 2 == 0 ? "Car" : "Truck");
+         builder.setText(2, row, "Vehicle");
+         builder.setNumber(3, row, row);
+      }
+
+      ColumnarSheet columnar = builder.build();
+
+      assertThat(columnar.getCellCount(), is(3L * ROW_COUNT));
+      assertThat(columnar.getValue(1, ROW_COUNT), is("Car"));
+      assertThat(columnar.getNumericValue(3, ROW_COUNT), is((double) ROW_COUNT));
+      // Checks the store's own size accounting only (three int codes and one double per row, plus array
+      // headers); it is not measured against the heap or compared with a POI workbook of the same cells
+      assertThat(columnar.getEstimatedMemoryBytes(), is(lessThan(21L * ROW_COUNT)));
+      assertThat(dictionary.size(), is(3));
+   }
+
+   @Test
+   public void TestReadFromRowSource() throws Exception
+   {
+      File file = folder.newFile("cars.csv");
+      Files.write(file.toPath(), "Car,Vehicle\n\nTruck,Vehicle\n".getBytes(StandardCharsets.UTF_8));
+
+      StringDictionary dictionary = new StringDictionary();
+      ColumnarSheet columnar = ColumnarSheet.read(DelimitedTextSheet.open(file), "cars", dictionary);
+
+      assertThat(columnar.getValue(1, 3), is("Truck"));
+      assertThat(columnar.getValue(2, 3), is("Vehicle"));
+      assertThat(columnar.isEmpty(1, 2), is(true));
+      assertThat(dictionary.size(), is(3));
+   }
+}
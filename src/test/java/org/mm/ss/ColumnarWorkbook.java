@@ -0,0 +1,213 @@
+package org.mm.ss;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+
+/**
+ * A columnar snapshot of some or all sheets of a workbook, sharing one {@link StringDictionary} so that a value
+ * repeated across sheets is stored once. Once taken, the snapshot answers cell lookups by
+ * {@link SpreadsheetLocation} without touching the POI model, which can then be released.
+ * <p>
+ * Lookups, reference resolution and shifts can also work on {@link CellAddress} values, which identify a sheet by
+ * its index in {@link #getSheetNames()}, so that rendering a reference allocates nothing until a location has to
+ * be handed on.
+ */
+public class ColumnarWorkbook
+{
+   private final StringDictionary dictionary;
+   private final Map<String, ColumnarSheet> sheets;
+   private final List<String> sheetNames;
+   private final ColumnarSheet[] sheetsByIndex;
+
+   public ColumnarWorkbook(StringDictionary dictionary, Map<String, ColumnarSheet> sheets)
+   {
+      this.dictionary = dictionary;
+      this.sheets = Collections.unmodifiableMap(new LinkedHashMap<>(sheets));
+      this.sheetNames = Collections.unmodifiableList(new ArrayList<>(sheets.keySet()));
+      this.sheetsByIndex = sheets.values().toArray(new ColumnarSheet[0]);
+   }
+
+   /**
+    * Snapshots every sheet of the workbook.
+    */
+   public static ColumnarWorkbook of(Workbook workbook)
+   {
+      StringDictionary dictionary = new StringDictionary();
+      Map<String, ColumnarSheet> sheets = new LinkedHashMap<>();
+      for (int i = 0; i < workbook.getNumberOfSheets(); i++) {
+         Sheet sheet = workbook.getSheetAt(i);
+         sheets.put(sheet.getSheetName(), ColumnarSheet.of(sheet, dictionary));
+      }
+      return new ColumnarWorkbook(dictionary, sheets);
+   }
+
+   /**
+    * Snapshots only the named sheets of the workbook, each limited to the given 1-based columns, or all of its
+    * columns when its set is null. Sheets are kept in workbook order; names with no sheet in the workbook are
+    * skipped.
+    */
+   public static ColumnarWorkbook of(Workbook workbook, Map<String, BitSet> columnsBySheet)
+   {
+      StringDictionary dictionary = new StringDictionary();
+      Map<String, ColumnarSheet> sheets = new LinkedHashMap<>();
+      for (int i = 0; i < workbook.getNumberOfSheets(); i++) {
+         Sheet sheet = workbook.getSheetAt(i);
+         if (columnsBySheet.containsKey(sheet.getSheetName())) {
+            sheets.put(sheet.getSheetName(),
+                  ColumnarSheet.of(sheet, dictionary, columnsBySheet.get(sheet.getSheetName())));
+         }
+      }
+      return new ColumnarWorkbook(dictionary, sheets);
+   }
+
+   public StringDictionary getDictionary()
+   {
+      return dictionary;
+   }
+
+   public Map<String, ColumnarSheet> getSheets()
+   {
+      return sheets;
+   }
+
+   public Optional<ColumnarSheet> getSheet(String sheetName)
+   {
+      return Optional.ofNullable(sheets.get(sheetName));
+   }
+
+   /**
+    * Returns the sheet names in index order, as used by {@link CellAddress}.
+    */
+   public List<String> getSheetNames()
+   {
+      return sheetNames;
+   }
+
+   /**
+    * Returns the index of the named sheet, or -1 if it is not in the snapshot.
+    */
+   public int getSheetIndex(String sheetName)
+   {
+      return sheetNames.indexOf(sheetName);
+   }
+
+   public long getAddress(SpreadsheetLocation location)
+   {
+      int sheetIndex = getSheetIndex(location.getSheetName());
+      if (sheetIndex < 0) {
+         throw new IllegalArgumentException("Sheet name '" + location.getSheetName() + "' does not exist");
+      }
+      return CellAddress.of(location, sheetIndex);
+   }
+
+   public SpreadsheetLocation getLocation(long address)
+   {
+      return CellAddress.toLocation(address, sheetNames);
+   }
+
+   /**
+    * Returns the text of the cell at the given packed address, or null if the cell is empty.
+    */
+   public String getValue(long address)
+   {
+      return sheetsByIndex[CellAddress.getSheetIndex(address)].getValue(CellAddress.getColumnNumber(address),
+            CellAddress.getRowNumber(address));
+   }
+
+   public boolean isEmpty(long address)
+   {
+      return sheetsByIndex[CellAddress.getSheetIndex(address)].isEmpty(CellAddress.getColumnNumber(address),
+            CellAddress.getRowNumber(address));
+   }
+
+   /**
+    * Returns the address of the nearest non-empty cell from the given one in the given direction, starting with
+    * the cell itself, or {@link CellAddress#NONE} if every cell up to the edge of the sheet's data is empty. The
+    * cell is found through the sheet's {@link NonEmptyIndex} rather than by scanning.
+    */
+   public long shift(long address, ShiftDirection direction)
+   {
+      ColumnarSheet sheet = sheetsByIndex[CellAddress.getSheetIndex(address)];
+      int columnNumber = CellAddress.getColumnNumber(address);
+      int rowNumber = CellAddress.getRowNumber(address);
+      int found = sheet.getNonEmptyIndex().find(columnNumber, rowNumber, direction);
+      if (found == 0) {
+         return CellAddress.NONE;
+      }
+      return direction.isVertical() ? CellAddress.withRow(address, found) : CellAddress.withColumn(address, found);
+   }
+
+   /**
+    * Resolves a reference against the current cell: the reference's own sheet, column and row replace those of
+    * the current cell unless given as wildcards, and a shift directive moves an empty result to the nearest
+    * non-empty cell. Returns {@link CellAddress#NONE} if a shift finds no value.
+    *
+    * @throws IllegalArgumentException
+    *            If the reference names a sheet that is not in the snapshot
+    */
+   public long resolve(ReferenceFootprint.Reference reference, long currentAddress)
+   {
+      int sheetIndex = CellAddress.getSheetIndex(currentAddress);
+      String sheetName = reference.resolveSheetName(null);
+      if (sheetName != null) {
+         sheetIndex = getSheetIndex(sheetName);
+         if (sheetIndex < 0) {
+            throw new IllegalArgumentException("Sheet name '" + sheetName + "' does not exist");
+         }
+      }
+      int columnNumber = reference.isColumnWildcard() ? CellAddress.getColumnNumber(currentAddress)
+            : reference.getColumnNumber();
+      int rowNumber = reference.isRowWildcard() ? CellAddress.getRowNumber(currentAddress) : reference.getRowNumber();
+      long address = CellAddress.pack(sheetIndex, columnNumber, rowNumber);
+      ShiftDirection direction = reference.shiftDirection();
+      return direction != null ? shift(address, direction) : address;
+   }
+
+   /**
+    * Returns the text of the cell at the given location, or null if the cell is empty.
+    *
+    * @throws IllegalArgumentException
+    *            If the location names a sheet that is not in the snapshot
+    */
+   public String getValue(SpreadsheetLocation location)
+   {
+      ColumnarSheet sheet = sheets.get(location.getSheetName());
+      if (sheet == null) {
+         throw new IllegalArgumentException("Sheet name '" + location.getSheetName() + "' does not exist");
+      }
+      return sheet.getValue(location.getPhysicalColumnNumber(), location.getPhysicalRowNumber());
+   }
+
+   public long getCellCount()
+   {
+      long cells = 0;
+      for (ColumnarSheet sheet : sheets.values()) {
+         cells += sheet.getCellCount();
+      }
+      return cells;
+   }
+
+   public long getEstimatedMemoryBytes()
+   {
+      long bytes = dictionary.getEstimatedMemoryBytes();
+      for (ColumnarSheet sheet : sheets.values()) {
+         bytes += sheet.getEstimatedMemoryBytes();
+      }
+      return bytes;
+   }
+
+   @Override
+   public String toString()
+   {
+      return String.format("ColumnarWorkbook[sheets=%d, cells=%d, dictionary=%d, bytes=%d]",
+            sheets.size(), getCellCount(), dictionary.size(), getEstimatedMemoryBytes());
+   }
+}
@@ -0,0 +1,240 @@
+package org.mm.ss;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.mm.ss.StreamingSheetReader.RowHandler;
+import org.mm.ss.StreamingSheetReader.SheetRow;
+
+/**
+ * A CSV or TSV file served as a single sheet, read through a read-only memory mapping so the file contents stay
+ * off the Java heap. Row start offsets are indexed lazily as rows are first reached, so any row can be fetched
+ * directly once the index has passed it, and opening the file costs nothing beyond the mapping. The index is
+ * extended under the sheet's lock, so rows may be read from several threads.
+ * <p>
+ * Fields are separated by the delimiter and may be enclosed in double quotes, in which case they may contain
+ * delimiters, line breaks and doubled quotes. The file is decoded as UTF-8, skipping a leading byte order mark,
+ * as spreadsheet applications write one when exporting UTF-8 CSV. The sheet is named after the file
+ * without its extension unless a name is given, so references such as <tt>@'data'!A1</tt> resolve against it.
+ */
+public class DelimitedTextSheet implements SheetRowSource
+{
+   private static final int SEGMENT_BITS = 30; // Map the file in 1 GB segments
+   private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+   private static final byte[] UTF8_BOM = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+
+   private final File file;
+   private final String sheetName;
+   private final byte delimiter;
+   private final long length;
+   private final MappedByteBuffer[] segments;
+
+   private long[] rowOffsets = new long[1024];
+   private int indexedRowCount = 0;
+   private boolean fullyIndexed = false;
+
+   public DelimitedTextSheet(File file, String sheetName, char delimiter) throws IOException
+   {
+      this.file = file;
+      this.sheetName = sheetName;
+      this.delimiter = (byte) delimiter;
+      try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+         this.length = channel.size();
+         int segmentCount = (int) ((length + SEGMENT_MASK) >>> SEGMENT_BITS);
+         this.segments = new MappedByteBuffer[segmentCount];
+         for (int i = 0; i < segmentCount; i++) {
+            long start = (long) i << SEGMENT_BITS;
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_MASK + 1, length - start));
+         }
+      }
+      long start = hasByteOrderMark() ? UTF8_BOM.length : 0;
+      if (length > start) {
+         rowOffsets[indexedRowCount++] = start;
+      } else {
+         fullyIndexed = true;
+      }
+   }
+
+   /**
+    * Opens the file as a sheet named after the file, choosing a tab delimiter for <tt>.tsv</tt> files and a
+    * comma otherwise.
+    */
+   public static DelimitedTextSheet open(File file) throws IOException
+   {
+      String fileName = file.getName();
+      int dot = fileName.lastIndexOf('.');
+      String baseName = dot > 0 ? fileName.substring(0, dot) : fileName;
+      char delimiter = fileName.toLowerCase().endsWith(".tsv") ? '\t' : ',';
+      return new DelimitedTextSheet(file, baseName, delimiter);
+   }
+
+   public String getSheetName()
+   {
+      return sheetName;
+   }
+
+   @Override
+   public void read(String sheetName, RowHandler handler) throws IOException
+   {
+      if (!this.sheetName.equals(sheetName)) {
+         throw new IOException("Sheet name '" + sheetName + "' does not exist in " + file);
+      }
+      for (int rowNumber = 1; ; rowNumber++) {
+         SheetRow row = getRow(rowNumber);
+         if (row == null) {
+            return;
+         }
+         if (row.getColumnCount() > 0) {
+            handler.row(row);
+         }
+      }
+   }
+
+   /**
+    * Returns the row with the given 1-based number, or null if the file has fewer rows. A row with no
+    * non-empty field has no columns.
+    */
+   public SheetRow getRow(int rowNumber)
+   {
+      long offset = getRowOffset(rowNumber);
+      if (offset < 0) {
+         return null;
+      }
+      List<String> fields = new ArrayList<>();
+      parseRow(offset, fields);
+      String[] values = new String[fields.size()];
+      int columnCount = 0;
+      for (int i = 0; i < values.length; i++) {
+         String field = fields.get(i);
+         if (!field.isEmpty()) {
+            values[i] = field;
+            columnCount = i + 1;
+         }
+      }
+      return new SheetRow(rowNumber, Arrays.copyOf(values, columnCount));
+   }
+
+   /**
+    * Returns the value at the given location, or null if the cell is empty or outside the file.
+    */
+   public String getValue(SpreadsheetLocation location)
+   {
+      if (!sheetName.equals(location.getSheetName())) {
+         throw new IllegalArgumentException("Sheet name '" + location.getSheetName() + "' does not exist in " + file);
+      }
+      SheetRow row = getRow(location.getPhysicalRowNumber());
+      return row == null ? null : row.getValue(location.getPhysicalColumnNumber());
+   }
+
+   /**
+    * Returns the number of rows, indexing the whole file if that has not already happened.
+    */
+   public synchronized int getRowCount()
+   {
+      while (!fullyIndexed) {
+         indexNextRow();
+      }
+      return indexedRowCount;
+   }
+
+   /**
+    * Returns the offset of the row with the given 1-based number, indexing up to it if needed, or -1 if the file
+    * has fewer rows.
+    */
+   private synchronized long getRowOffset(int rowNumber)
+   {
+      if (rowNumber < 1) {
+         return -1;
+      }
+      while (indexedRowCount < rowNumber && !fullyIndexed) {
+         indexNextRow();
+      }
+      return rowNumber <= indexedRowCount ? rowOffsets[rowNumber - 1] : -1;
+   }
+
+   private void indexNextRow()
+   {
+      long next = parseRow(rowOffsets[indexedRowCount - 1], null);
+      if (next >= length) {
+         fullyIndexed = true;
+         return;
+      }
+      if (indexedRowCount == rowOffsets.length) {
+         rowOffsets = Arrays.copyOf(rowOffsets, indexedRowCount * 2);
+      }
+      rowOffsets[indexedRowCount++] = next;
+   }
+
+   /**
+    * Parses the row starting at the given offset, adding its fields to the list if one is given, and returns
+    * the offset of the next row.
+    */
+   private long parseRow(long offset, List<String> fields)
+   {
+      ByteArrayOutputStream field = new ByteArrayOutputStream();
+      boolean quoted = false;
+      long position = offset;
+      while (position < length) {
+         byte b = byteAt(position++);
+         if (quoted) {
+            if (b == '"') {
+               if (position < length && byteAt(position) == '"') {
+                  field.write('"');
+                  position++;
+               } else {
+                  quoted = false;
+               }
+            } else {
+               field.write(b);
+            }
+         } else if (b == '"') {
+            quoted = true;
+         } else if (b == delimiter) {
+            addField(fields, field);
+         } else if (b == '\n' || b == '\r') {
+            if (b == '\r' && position < length && byteAt(position) == '\n') {
+               position++;
+            }
+            break;
+         } else {
+            field.write(b);
+         }
+      }
+      addField(fields, field);
+      return position;
+   }
+
+   private static void addField(List<String> fields, ByteArrayOutputStream field)
+   {
+      if (fields != null) {
+         fields.add(new String(field.toByteArray(), StandardCharsets.UTF_8));
+      }
+      field.reset();
+   }
+
+   private boolean hasByteOrderMark()
+   {
+      if (length < UTF8_BOM.length) {
+         return false;
+      }
+      for (int i = 0; i < UTF8_BOM.length; i++) {
+         if (byteAt(i) != UTF8_BOM[i]) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private byte byteAt(long position)
+   {
+      return segments[(int) (position >>> SEGMENT_BITS)].get((int) (position & SEGMENT_MASK));
+   }
+}
@@ -0,0 +1,82 @@
+package org.mm.ss;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mm.ss.StreamingSheetReader.SheetRow;
+
+public class DelimitedTextSheetTest
+{
+   @Rule
+   public final TemporaryFolder folder = new TemporaryFolder();
+
+   @Test
+   public void TestQuotedFields() throws Exception
+   {
+      DelimitedTextSheet sheet = open("cars.csv",
+            "Name,Comment\r\n\"Car, small\",\"Says \"\"hi\"\"\nover two lines\"\r\nTruck,");
+
+      assertThat(sheet.getSheetName(), is("cars"));
+      assertThat(sheet.getValue(new SpreadsheetLocation("cars", 1, 2)), is("Car, small"));
+      assertThat(sheet.getValue(new SpreadsheetLocation("cars", 2, 2)), is("Says \"hi\"\nover two lines"));
+      assertThat(sheet.getValue(new SpreadsheetLocation("cars", 2, 3)), is(nullValue()));
+      assertThat(sheet.getRowCount(), is(3));
+   }
+
+   @Test
+   public void TestRandomAccessBeforeAndAfterIndexing() throws Exception
+   {
+      DelimitedTextSheet sheet = open("data.tsv", "a\tb\nc\td\ne\tf\n");
+
+      assertThat(sheet.getRow(3).getValue(2), is("f"));
+      assertThat(sheet.getRow(1).getValue(1), is("a"));
+      assertThat(sheet.getRow(4), is(nullValue()));
+   }
+
+   @Test
+   public void TestReadSkipsEmptyRows() throws Exception
+   {
+      DelimitedTextSheet sheet = open("data.csv", "Car\n\n,\nTruck\n");
+
+      List<Integer> rowNumbers = new ArrayList<>();
+      sheet.read("data", (SheetRow row) -> rowNumbers.add(row.getRowNumber()));
+      assertThat(rowNumbers.toString(), is(equalTo("[1, 4]")));
+   }
+
+   @Test
+   public void TestByteOrderMarkSkipped() throws Exception
+   {
+      DelimitedTextSheet sheet = open("bom.csv", "\uFEFFName,Model\nCar,Sedan\n");
+
+      assertThat(sheet.getRow(1).getValue(1), is("Name"));
+      assertThat(sheet.getRow(2).getValue(2), is("Sedan"));
+      assertThat(sheet.getRowCount(), is(2));
+   }
+
+   @Test
+   public void TestByteOrderMarkOnlyFileIsEmpty() throws Exception
+   {
+      DelimitedTextSheet sheet = open("empty.csv", "\uFEFF");
+
+      assertThat(sheet.getRow(1), is(nullValue()));
+      assertThat(sheet.getRowCount(), is(0));
+   }
+
+   private DelimitedTextSheet open(String fileName, String content) throws Exception
+   {
+      File file = folder.newFile(fileName);
+      Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+      return DelimitedTextSheet.open(file);
+   }
+}
@@ -0,0 +1,187 @@
+package org.mm.ss;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.mm.ss.StreamingSheetReader.SheetRow;
+
+/**
+ * An in-memory workbook that holds only the sheets of an XLSX file that mappings actually read. Sheets are
+ * parsed with {@link StreamingSheetReader} the first time they are asked for, so the data of every other sheet
+ * in the file is skipped without being parsed, and sheets no longer needed can be dropped again.
+ * <p>
+ * The sheets needed by a set of expressions are known before rendering from their {@link ReferenceFootprint}s,
+ * so the usual pattern is to call {@link #loadSheets} with the footprints and then build a
+ * {@link SpreadSheetDataSource} over {@link #getWorkbook()}. Loaded cells keep the type of the original cells:
+ * numeric cells keep their value and number format, so dates stay dates, boolean cells stay boolean, and every
+ * other cell holds its formatted text. Loaded sheets are kept in the order they have in the file, whatever order
+ * they are loaded in.
+ */
+public class LazyWorkbook
+{
+   private static final String GENERAL_FORMAT = "General";
+
+   private final StreamingSheetReader reader;
+   private final Workbook workbook = new XSSFWorkbook();
+   private final Set<String> loadedSheetNames = new LinkedHashSet<>();
+   private final Map<String, CellStyle> numberStyles = new HashMap<>();
+   private List<String> fileSheetNames;
+
+   public LazyWorkbook(File file)
+   {
+      this.reader = new StreamingSheetReader(file, true);
+   }
+
+   /**
+    * Returns the sheets read by the given footprints, where unqualified references read the current sheet. The
+    * current sheet is always included.
+    */
+   public static Set<String> getReferencedSheetNames(Collection<ReferenceFootprint> footprints,
+         String currentSheetName)
+   {
+      Set<String> sheetNames = new LinkedHashSet<>();
+      sheetNames.add(currentSheetName);
+      for (ReferenceFootprint footprint : footprints) {
+         sheetNames.addAll(footprint.getSheetNames(currentSheetName));
+      }
+      return sheetNames;
+   }
+
+   public Workbook getWorkbook()
+   {
+      return workbook;
+   }
+
+   /**
+    * Returns the names of the loaded sheets, in the order they have in the file.
+    */
+   public Set<String> getLoadedSheetNames()
+   {
+      Set<String> sheetNames = new LinkedHashSet<>();
+      for (int i = 0; i < workbook.getNumberOfSheets(); i++) {
+         sheetNames.add(workbook.getSheetName(i));
+      }
+      return Collections.unmodifiableSet(sheetNames);
+   }
+
+   public boolean isLoaded(String sheetName)
+   {
+      return loadedSheetNames.contains(sheetName);
+   }
+
+   /**
+    * Loads the named sheet unless it is already loaded. Returns true if the sheet was read from the file.
+    *
+    * @throws IOException
+    *            If the file cannot be read or has no sheet with the given name
+    */
+   public boolean loadSheet(String sheetName) throws IOException
+   {
+      if (isLoaded(sheetName)) {
+         return false;
+      }
+      Sheet sheet = workbook.createSheet(sheetName);
+      boolean loaded = false;
+      try {
+         reader.read(sheetName, (SheetRow row) -> writeRow(sheet, row));
+         workbook.setSheetOrder(sheetName, getLoadedPosition(sheetName));
+         loaded = true;
+      } finally {
+         if (!loaded) {
+            workbook.removeSheetAt(workbook.getSheetIndex(sheetName));
+         }
+      }
+      loadedSheetNames.add(sheetName);
+      return true;
+   }
+
+   /**
+    * Loads every sheet read by the given footprints that is not already loaded.
+    */
+   public void loadSheets(Collection<ReferenceFootprint> footprints, String currentSheetName) throws IOException
+   {
+      for (String sheetName : getReferencedSheetNames(footprints, currentSheetName)) {
+         loadSheet(sheetName);
+      }
+   }
+
+   /**
+    * Drops every loaded sheet not in the given set, releasing its rows. A dropped sheet is read from the file
+    * again if it is loaded later.
+    */
+   public void retainSheets(Set<String> sheetNames)
+   {
+      for (int i = workbook.getNumberOfSheets() - 1; i >= 0; i--) {
+         String sheetName = workbook.getSheetName(i);
+         if (!sheetNames.contains(sheetName)) {
+            workbook.removeSheetAt(i);
+            loadedSheetNames.remove(sheetName);
+         }
+      }
+   }
+
+   /*
+    * The position among the loaded sheets that keeps them in file order: the number of loaded sheets that come
+    * before the given one in the file.
+    */
+   private int getLoadedPosition(String sheetName) throws IOException
+   {
+      if (fileSheetNames == null) {
+         fileSheetNames = reader.getSheetNames();
+      }
+      int fileIndex = fileSheetNames.indexOf(sheetName);
+      int position = 0;
+      for (String loadedSheetName : loadedSheetNames) {
+         if (fileSheetNames.indexOf(loadedSheetName) < fileIndex) {
+            position++;
+         }
+      }
+      return position;
+   }
+
+   private void writeRow(Sheet sheet, SheetRow row)
+   {
+      Row sheetRow = sheet.createRow(row.getRowNumber() - 1);
+      for (int columnNumber = 1; columnNumber <= row.getColumnCount(); columnNumber++) {
+         String value = row.getValue(columnNumber);
+         if (value == null) {
+            continue;
+         }
+         Cell cell = sheetRow.createCell(columnNumber - 1);
+         Object rawValue = row.getRawValue(columnNumber);
+         if (rawValue instanceof Double) {
+            cell.setCellValue((Double) rawValue);
+            String format = row.getNumberFormat(columnNumber);
+            if (format != null && !format.equals(GENERAL_FORMAT)) {
+               cell.setCellStyle(getNumberStyle(format));
+            }
+         } else if (rawValue instanceof Boolean) {
+            cell.setCellValue((Boolean) rawValue);
+         } else {
+            cell.setCellValue(value);
+         }
+      }
+   }
+
+   private CellStyle getNumberStyle(String format)
+   {
+      return numberStyles.computeIfAbsent(format, key -> {
+         CellStyle style = workbook.createCellStyle();
+         style.setDataFormat(workbook.createDataFormat().getFormat(key));
+         return style;
+      });
+   }
+}
@@ -0,0 +1,160 @@
+package org.mm.ss;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.semanticweb.owlapi.apibinding.OWLFunctionalSyntaxFactory.Class;
+import static org.semanticweb.owlapi.apibinding.OWLFunctionalSyntaxFactory.IRI;
+import static org.semanticweb.owlapi.apibinding.OWLFunctionalSyntaxFactory.SubClassOf;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.mm.core.OWLAPIOntology;
+import org.mm.core.settings.ReferenceSettings;
+import org.mm.core.settings.ValueEncodingSetting;
+import org.mm.renderer.ExpressionPlan;
+import org.mm.renderer.IntegrationTestBase;
+import org.mm.renderer.owlapi.AxiomSink;
+import org.mm.renderer.owlapi.SheetRenderer;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+public class LazyWorkbookTest extends IntegrationTestBase
+{
+   private static final String SHEET2 = "Sheet2";
+   private static final String SHEET3 = "Sheet3";
+
+   @Rule
+   public final TemporaryFolder folder = new TemporaryFolder();
+
+   @Rule
+   public final ExpectedException thrown = ExpectedException.none();
+
+   private OWLOntology ontology;
+   private ReferenceSettings settings;
+   private File file;
+
+   @Before
+   public void setUp() throws Exception
+   {
+      ontology = createOWLOntology();
+      settings = new ReferenceSettings();
+      settings.setValueEncodingSetting(ValueEncodingSetting.RDF_ID);
+
+      Workbook workbook = new XSSFWorkbook();
+      workbook.createSheet(SHEET1).createRow(0).createCell(0).setCellValue("Car");
+      workbook.createSheet(SHEET2).createRow(0).createCell(0).setCellValue("Vehicle");
+      workbook.createSheet(SHEET3).createRow(0).createCell(0).setCellValue("Unused");
+      file = folder.newFile("wide.xlsx");
+      try (OutputStream out = new FileOutputStream(file)) {
+         workbook.write(out);
+      }
+   }
+
+   @Test
+   public void TestLoadsOnlyReferencedSheets() throws Exception
+   {
+      ExpressionPlan plan = compileExpression("Class: @A* SubClassOf: @'Sheet2'!A1", settings);
+      LazyWorkbook lazy = new LazyWorkbook(file);
+      lazy.loadSheets(Arrays.asList(plan.getFootprint()), SHEET1);
+
+      assertThat(lazy.getLoadedSheetNames(), contains(SHEET1, SHEET2));
+      assertThat(lazy.getWorkbook().getNumberOfSheets(), is(2));
+
+      List<OWLAxiom> axioms = new ArrayList<>();
+      AxiomSink sink = (expressionIndex, rowNumber, axiom) -> axioms.add(axiom);
+      new SheetRenderer(new OWLAPIOntology(ontology), new SpreadSheetDataSource(lazy.getWorkbook()))
+            .renderSheet(SheetRange.ofRows(SHEET1, 1, 1), Arrays.asList(plan), sink);
+
+      assertThat(axioms.contains(SubClassOf(Class(IRI(ONTOLOGY_ID, "Car")), Class(IRI(ONTOLOGY_ID, "Vehicle")))),
+            is(true));
+   }
+
+   @Test
+   public void TestRetainAndReload() throws Exception
+   {
+      LazyWorkbook lazy = new LazyWorkbook(file);
+      lazy.loadSheet(SHEET1);
+      lazy.loadSheet(SHEET3);
+
+      lazy.retainSheets(Collections.singleton(SHEET3));
+      assertThat(lazy.getLoadedSheetNames(), contains(SHEET3));
+      assertThat(lazy.loadSheet(SHEET3), is(false));
+      assertThat(lazy.loadSheet(SHEET1), is(true));
+      assertThat(lazy.getWorkbook().getSheet(SHEET1).getRow(0).getCell(0).getStringCellValue(), is("Car"));
+   }
+
+   @Test
+   public void TestCellTypesKept() throws Exception
+   {
+      Workbook workbook = new XSSFWorkbook();
+      Row row = workbook.createSheet(SHEET1).createRow(0);
+      row.createCell(0).setCellValue(2.5);
+      row.createCell(1).setCellValue(true);
+      CellStyle dateStyle = workbook.createCellStyle();
+      dateStyle.setDataFormat(workbook.createDataFormat().getFormat("yyyy-mm-dd"));
+      row.createCell(2).setCellValue(43466.0); // 2019-01-01
+      row.getCell(2).setCellStyle(dateStyle);
+      row.createCell(3).setCellValue("Car");
+      File typedFile = folder.newFile("typed.xlsx");
+      try (OutputStream out = new FileOutputStream(typedFile)) {
+         workbook.write(out);
+      }
+
+      LazyWorkbook lazy = new LazyWorkbook(typedFile);
+      lazy.loadSheet(SHEET1);
+      Row loaded = lazy.getWorkbook().getSheet(SHEET1).getRow(0);
+
+      assertThat(loaded.getCell(0).getCellType(), is(CellType.NUMERIC));
+      assertThat(loaded.getCell(0).getNumericCellValue(), is(2.5));
+      assertThat(loaded.getCell(1).getCellType(), is(CellType.BOOLEAN));
+      assertThat(loaded.getCell(1).getBooleanCellValue(), is(true));
+      assertThat(loaded.getCell(2).getCellType(), is(CellType.NUMERIC));
+      assertThat(loaded.getCell(2).getCellStyle().getDataFormatString(), is("yyyy-mm-dd"));
+      assertThat(loaded.getCell(3).getStringCellValue(), is("Car"));
+   }
+
+   @Test
+   public void TestFileSheetOrderKept() throws Exception
+   {
+      LazyWorkbook lazy = new LazyWorkbook(file);
+      lazy.loadSheet(SHEET3);
+      lazy.loadSheet(SHEET1);
+      lazy.loadSheet(SHEET2);
+
+      assertThat(lazy.getLoadedSheetNames(), contains(SHEET1, SHEET2, SHEET3));
+      assertThat(lazy.getWorkbook().getSheetName(0), is(SHEET1));
+   }
+
+   @Test
+   public void TestFailedLoadLeavesNoSheet() throws Exception
+   {
+      LazyWorkbook lazy = new LazyWorkbook(file);
+      lazy.loadSheet(SHEET1);
+
+      thrown.expect(IOException.class);
+      try {
+         lazy.loadSheet("Missing");
+      } finally {
+         assertThat(lazy.getWorkbook().getNumberOfSheets(), is(1));
+         assertThat(lazy.isLoaded("Missing"), is(false));
+      }
+   }
+}
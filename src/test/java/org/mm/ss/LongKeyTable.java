@@ -0,0 +1,171 @@
+package org.mm.ss;
+
+/**
+ * A thread-safe hash table from non-zero primitive long keys, such as packed {@link CellAddress}es, to objects.
+ * Keys are stored unboxed in open-addressing arrays, so a lookup allocates nothing. The table is split into
+ * independently locked segments to keep contention low when several renderer threads read it.
+ */
+class LongKeyTable<V>
+{
+   private static final int SEGMENT_COUNT = 16;
+
+   private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+   LongKeyTable()
+   {
+      for (int i = 0; i < SEGMENT_COUNT; i++) {
+         segments[i] = new Segment();
+      }
+   }
+
+   @SuppressWarnings("unchecked")
+   V get(long key)
+   {
+      long hash = hash(key);
+      return (V) segmentFor(hash).get(key, hash);
+   }
+
+   void put(long key, V value)
+   {
+      if (key == 0) {
+         throw new IllegalArgumentException("Key must not be zero");
+      }
+      long hash = hash(key);
+      segmentFor(hash).put(key, hash, value);
+   }
+
+   void remove(long key)
+   {
+      long hash = hash(key);
+      segmentFor(hash).remove(key, hash);
+   }
+
+   void clear()
+   {
+      for (Segment segment : segments) {
+         segment.clear();
+      }
+   }
+
+   int size()
+   {
+      int size = 0;
+      for (Segment segment : segments) {
+         size += segment.size();
+      }
+      return size;
+   }
+
+   private Segment segmentFor(long hash)
+   {
+      return segments[(int) (hash >>> 60) & (SEGMENT_COUNT - 1)];
+   }
+
+   /*
+    * MurmurHash3 finalizer, so that keys differing only in the high bits (the sheet index) spread as well as
+    * keys differing in the row.
+    */
+   private static long hash(long key)
+   {
+      key ^= key >>> 33;
+      key *= 0xff51afd7ed558ccdL;
+      key ^= key >>> 33;
+      key *= 0xc4ceb9fe1a85ec53L;
+      key ^= key >>> 33;
+      return key;
+   }
+
+   /**
+    * One locked open-addressing table with linear probing, kept at most half full. Zero marks an empty slot.
+    */
+   private static class Segment
+   {
+      private long[] keys = new long[16];
+      private Object[] values = new Object[16];
+      private int size = 0;
+
+      private synchronized Object get(long key, long hash)
+      {
+         int mask = keys.length - 1;
+         for (int slot = (int) hash & mask; keys[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+               return values[slot];
+            }
+         }
+         return null;
+      }
+
+      private synchronized void put(long key, long hash, Object value)
+      {
+         int slot = findSlot(keys, key, hash);
+         if (keys[slot] == 0) {
+            if (2 * (size + 1) > keys.length) {
+               grow();
+               slot = findSlot(keys, key, hash);
+            }
+            keys[slot] = key;
+            size++;
+         }
+         values[slot] = value;
+      }
+
+      private synchronized void remove(long key, long hash)
+      {
+         int mask = keys.length - 1;
+         int slot = findSlot(keys, key, hash);
+         if (keys[slot] == 0) {
+            return;
+         }
+         // Shift later entries of the probe run back so that lookups never stop at the freed slot
+         int free = slot;
+         for (int next = (free + 1) & mask; keys[next] != 0; next = (next + 1) & mask) {
+            int home = (int) hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+               keys[free] = keys[next];
+               values[free] = values[next];
+               free = next;
+            }
+         }
+         keys[free] = 0;
+         values[free] = null;
+         size--;
+      }
+
+      private synchronized void clear()
+      {
+         keys = new long[16];
+         values = new Object[16];
+         size = 0;
+      }
+
+      private synchronized int size()
+      {
+         return size;
+      }
+
+      private void grow()
+      {
+         long[] oldKeys = keys;
+         Object[] oldValues = values;
+         keys = new long[oldKeys.length * 2];
+         values = new Object[oldKeys.length * 2];
+         for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+               int slot = findSlot(keys, oldKeys[i], hash(oldKeys[i]));
+               keys[slot] = oldKeys[i];
+               values[slot] = oldValues[i];
+            }
+         }
+      }
+
+      private static int findSlot(long[] keys, long key, long hash)
+      {
+         int mask = keys.length - 1;
+         int slot = (int) hash & mask;
+         while (keys[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+         }
+         return slot;
+      }
+   }
+}
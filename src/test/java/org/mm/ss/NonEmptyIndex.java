@@ -0,0 +1,183 @@
+package org.mm.ss;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Finds the nearest non-empty cell of a {@link ColumnarSheet} in a shift direction without scanning cell by cell.
+ * <p>
+ * For vertical shifts each column gets two arrays giving, for every row, the nearest non-empty row at or above
+ * it and at or below it, so a shift is a single array read however far away the value is; this is the case of a
+ * parent value written once above hundreds of child rows. For horizontal shifts each row gets the sorted numbers
+ * of its non-empty columns, searched by bisection. Indexes are built on first use, per column for vertical shifts
+ * and once for the sheet for horizontal shifts, and are safe to share between threads.
+ */
+public class NonEmptyIndex
+{
+   private static final int[] NO_COLUMNS = new int[0];
+
+   private final ColumnarSheet sheet;
+   private final AtomicReferenceArray<int[]> previousRows;
+   private final AtomicReferenceArray<int[]> nextRows;
+   private volatile int[][] rowColumns;
+
+   public NonEmptyIndex(ColumnarSheet sheet)
+   {
+      this.sheet = sheet;
+      this.previousRows = new AtomicReferenceArray<>(sheet.getColumnCount());
+      this.nextRows = new AtomicReferenceArray<>(sheet.getColumnCount());
+   }
+
+   /**
+    * Returns the nearest non-empty row in the column at or above the given row, or 0 if there is none.
+    */
+   public int findRowUp(int columnNumber, int rowNumber)
+   {
+      if (columnNumber < 1 || columnNumber > sheet.getColumnCount() || rowNumber < 1) {
+         return 0;
+      }
+      int[] previous = getPreviousRows(columnNumber);
+      if (previous.length == 0) {
+         return 0;
+      }
+      return previous[Math.min(rowNumber, previous.length) - 1];
+   }
+
+   /**
+    * Returns the nearest non-empty row in the column at or below the given row, or 0 if there is none.
+    */
+   public int findRowDown(int columnNumber, int rowNumber)
+   {
+      if (columnNumber < 1 || columnNumber > sheet.getColumnCount()) {
+         return 0;
+      }
+      int[] next = getNextRows(columnNumber);
+      rowNumber = Math.max(rowNumber, 1);
+      return rowNumber > next.length ? 0 : next[rowNumber - 1];
+   }
+
+   /**
+    * Returns the nearest non-empty column in the row at or to the left of the given column, or 0 if there is
+    * none.
+    */
+   public int findColumnLeft(int columnNumber, int rowNumber)
+   {
+      int[] columns = getColumns(rowNumber);
+      int position = Arrays.binarySearch(columns, columnNumber);
+      if (position >= 0) {
+         return columns[position];
+      }
+      int before = -position - 2; // Last column below the insertion point
+      return before >= 0 ? columns[before] : 0;
+   }
+
+   /**
+    * Returns the nearest non-empty column in the row at or to the right of the given column, or 0 if there is
+    * none.
+    */
+   public int findColumnRight(int columnNumber, int rowNumber)
+   {
+      int[] columns = getColumns(rowNumber);
+      int position = Arrays.binarySearch(columns, columnNumber);
+      if (position >= 0) {
+         return columns[position];
+      }
+      int after = -position - 1; // Insertion point
+      return after < columns.length ? columns[after] : 0;
+   }
+
+   /**
+    * Returns the column or row number reached by shifting from the given cell in the given direction, including
+    * the cell itself, or 0 if there is no non-empty cell in that direction. Vertical shifts return a row number
+    * and horizontal shifts a column number.
+    */
+   public int find(int columnNumber, int rowNumber, ShiftDirection direction)
+   {
+      switch (direction) {
+         case UP:
+            return findRowUp(columnNumber, rowNumber);
+         case DOWN:
+            return findRowDown(columnNumber, rowNumber);
+         case LEFT:
+            return findColumnLeft(columnNumber, rowNumber);
+         case RIGHT:
+            return findColumnRight(columnNumber, rowNumber);
+         default:
+            throw new IllegalArgumentException("Unknown shift direction " + direction);
+      }
+   }
+
+   private int[] getPreviousRows(int columnNumber)
+   {
+      int[] previous = previousRows.get(columnNumber - 1);
+      if (previous == null) {
+         int[] codes = sheet.getColumnCodes(columnNumber);
+         previous = new int[codes.length];
+         int last = 0;
+         for (int i = 0; i < codes.length; i++) {
+            if (codes[i] != 0) {
+               last = i + 1;
+            }
+            previous[i] = last;
+         }
+         previousRows.compareAndSet(columnNumber - 1, null, previous);
+      }
+      return previous;
+   }
+
+   private int[] getNextRows(int columnNumber)
+   {
+      int[] next = nextRows.get(columnNumber - 1);
+      if (next == null) {
+         int[] codes = sheet.getColumnCodes(columnNumber);
+         next = new int[codes.length];
+         int following = 0;
+         for (int i = codes.length - 1; i >= 0; i--) {
+            if (codes[i] != 0) {
+               following = i + 1;
+            }
+            next[i] = following;
+         }
+         nextRows.compareAndSet(columnNumber - 1, null, next);
+      }
+      return next;
+   }
+
+   private int[] getColumns(int rowNumber)
+   {
+      int[][] columns = rowColumns;
+      if (columns == null) {
+         columns = buildRowColumns();
+         rowColumns = columns;
+      }
+      return rowNumber < 1 || rowNumber > columns.length ? NO_COLUMNS : columns[rowNumber - 1];
+   }
+
+   private int[][] buildRowColumns()
+   {
+      int rowCount = sheet.getRowCount();
+      int[] counts = new int[rowCount];
+      for (int columnNumber = 1; columnNumber <= sheet.getColumnCount(); columnNumber++) {
+         int[] codes = sheet.getColumnCodes(columnNumber);
+         for (int i = 0; i < codes.length; i++) {
+            if (codes[i] != 0) {
+               counts[i]++;
+            }
+         }
+      }
+      int[][] columns = new int[rowCount][];
+      for (int i = 0; i < rowCount; i++) {
+         columns[i] = counts[i] == 0 ? NO_COLUMNS : new int[counts[i]];
+         counts[i] = 0;
+      }
+      for (int columnNumber = 1; columnNumber <= sheet.getColumnCount(); columnNumber++) {
+         int[] codes = sheet.getColumnCodes(columnNumber);
+         for (int i = 0; i < codes.length; i++) {
+            if (codes[i] != 0) {
+               columns[i][counts[i]++] = columnNumber; // Columns are visited in order, so each row stays sorted
+            }
+         }
+      }
+      return columns;
+   }
+}
@@ -0,0 +1,67 @@
+package org.mm.ss;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class NonEmptyIndexTest
+{
+   private static final String SHEET1 = "Sheet1";
+   private static final int SCAN_LIMIT = 1000;
+
+   @Test
+   public void TestParentAboveChildren()
+   {
+      ColumnarSheet sheet = new ColumnarSheet.Builder(SHEET1, new StringDictionary())
+            .setText(1, 1, "Vehicle")
+            .setText(1, 500, "Animal")
+            .setText(2, 1000, "Dog")
+            .build();
+      NonEmptyIndex index = sheet.getNonEmptyIndex();
+
+      assertThat(index.findRowUp(1, 499), is(1));
+      assertThat(index.findRowUp(1, 500), is(500));
+      assertThat(index.findRowUp(1, 1000), is(500)); // Below the last value in the column
+      assertThat(index.findRowDown(1, 2), is(500));
+      assertThat(index.findRowDown(1, 501), is(0));
+      assertThat(index.findColumnLeft(3, 1000), is(2));
+      assertThat(index.findColumnRight(1, 1000), is(2));
+      assertThat(index.findColumnRight(3, 1000), is(0));
+   }
+
+   @Test
+   public void TestMatchesCellByCellScan()
+   {
+      Random random = new Random(42);
+      ColumnarSheet.Builder builder = new ColumnarSheet.Builder(SHEET1, new StringDictionary());
+      for (int i = 0; i < 400; i++) {
+         builder.setText(1 + random.nextInt(12), 1 + random.nextInt(200), "v" + i);
+      }
+      ColumnarSheet sheet = builder.build();
+      NonEmptyIndex index = sheet.getNonEmptyIndex();
+
+      for (int column = 1; column <= 14; column++) {
+         for (int row = 1; row <= 210; row++) {
+            for (ShiftDirection direction : ShiftDirection.values()) {
+               assertThat(direction + " from column " + column + ", row " + row,
+                     index.find(column, row, direction), is(scan(sheet, column, row, direction)));
+            }
+         }
+      }
+   }
+
+   private static int scan(ColumnarSheet sheet, int column, int row, ShiftDirection direction)
+   {
+      while (column >= 1 && row >= 1 && column <= SCAN_LIMIT && row <= SCAN_LIMIT) {
+         if (!sheet.isEmpty(column, row)) {
+            return direction.isVertical() ? row : column;
+         }
+         column += direction.getColumnStep();
+         row += direction.getRowStep();
+      }
+      return 0;
+   }
+}
@@ -0,0 +1,551 @@
+package org.mm.ss;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.mm.core.settings.ReferenceSettings;
+
+/**
+ * The set of cells a mapping expression may read, worked out from the expression text before any row is
+ * rendered. Every <tt>@</tt> reference in the expression is recorded with its sheet, column and row (either of
+ * which may be the <tt>*</tt> wildcard standing for the current location), the shift direction it searches in,
+ * and the <tt>mm:</tt> directives given in its options. References nested inside the options of other
+ * references, as in <tt>@A*(mm:append(@B*(mm:ShiftDown)))</tt>, are included.
+ * <p>
+ * A data source can use the footprint to load only the sheets and columns an expression needs. A reference
+ * with a shift may read beyond its own cell: vertically along its column, or horizontally along its row.
+ * <p>
+ * The parser gives a reference without a shift or empty location directive of its own the defaults of its
+ * {@link ReferenceSettings}. A footprint built with {@link #of(String, ReferenceSettings)} applies the same
+ * defaults; one built from the text alone sees only the directives written in it.
+ */
+public class ReferenceFootprint
+{
+   /**
+    * Column or row number of a wildcard, which is resolved against the current location.
+    */
+   public static final int CURRENT = 0;
+
+   private static final String[] DECLARATION_KEYWORDS = { "Class:", "Individual:" };
+   private static final String DIRECTIVE_PREFIX = "mm:";
+   private static final String EMPTY_LOCATION_SUFFIX = "IfEmptyLocation";
+
+   private final List<Reference> references;
+
+   private ReferenceFootprint(List<Reference> references)
+   {
+      this.references = Collections.unmodifiableList(references);
+   }
+
+   /**
+    * Returns the footprint of the expression as written, with no default shift or empty location handling.
+    */
+   public static ReferenceFootprint of(String expression)
+   {
+      return of(expression, null, null);
+   }
+
+   /**
+    * Returns the footprint of the expression as parsed under the given settings, so a reference with no shift
+    * or empty location directive of its own takes the default the settings give it.
+    */
+   public static ReferenceFootprint of(String expression, ReferenceSettings settings)
+   {
+      // The setting constants name the same handling as the directives, e.g. SHIFT_UP and mm:ShiftUp
+      ShiftDirection defaultShiftDirection = ShiftDirection.forDirective(toDirective(settings.getShiftSetting()));
+      String defaultEmptyLocationDirective = toDirective(settings.getEmptyLocationSetting());
+      return of(expression, defaultShiftDirection, defaultEmptyLocationDirective);
+   }
+
+   private static ReferenceFootprint of(String expression, ShiftDirection defaultShiftDirection,
+         String defaultEmptyLocationDirective)
+   {
+      Defaults defaults = new Defaults(defaultShiftDirection, defaultEmptyLocationDirective);
+      List<Reference> references = new ArrayList<>();
+      int declarationStart = findDeclarationReference(expression);
+      int position = 0;
+      while (position < expression.length()) {
+         char c = expression.charAt(position);
+         if (c == '"') {
+            position = skipString(expression, position);
+         } else if (c == '@') {
+            // Continue scanning from the end of the address so references nested in the options are found
+            position = readReference(expression, position, position == declarationStart, defaults, references);
+         } else {
+            position++;
+         }
+      }
+      return new ReferenceFootprint(references);
+   }
+
+   public static ReferenceFootprint union(Collection<ReferenceFootprint> footprints)
+   {
+      List<Reference> references = new ArrayList<>();
+      for (ReferenceFootprint footprint : footprints) {
+         references.addAll(footprint.references);
+      }
+      return new ReferenceFootprint(references);
+   }
+
+   public List<Reference> getReferences()
+   {
+      return references;
+   }
+
+   public boolean isEmpty()
+   {
+      return references.isEmpty();
+   }
+
+   public Optional<Reference> getDeclarationReference()
+   {
+      for (Reference reference : references) {
+         if (reference.isDeclaration()) {
+            return Optional.of(reference);
+         }
+      }
+      return Optional.empty();
+   }
+
+   /**
+    * Returns the names of the sheets read by the expression, where unqualified references read the given
+    * current sheet.
+    */
+   public Set<String> getSheetNames(String currentSheetName)
+   {
+      Set<String> sheetNames = new LinkedHashSet<>();
+      for (Reference reference : references) {
+         sheetNames.add(reference.resolveSheetName(currentSheetName));
+      }
+      return sheetNames;
+   }
+
+   /**
+    * Returns the 1-based numbers of the columns read in the given sheet, with wildcard columns resolved to the
+    * current column. Columns reached only by shifting left or right are not included; see
+    * {@link #getShiftDirections(String, String)}.
+    */
+   public SortedSet<Integer> getColumnNumbers(String sheetName, String currentSheetName, int currentColumnNumber)
+   {
+      SortedSet<Integer> columnNumbers = new TreeSet<>();
+      for (Reference reference : references) {
+         if (reference.resolveSheetName(currentSheetName).equals(sheetName)) {
+            columnNumbers.add(reference.isColumnWildcard() ? currentColumnNumber : reference.getColumnNumber());
+         }
+      }
+      return columnNumbers;
+   }
+
+   /**
+    * Returns the 1-based numbers of the rows read by absolute (non-wildcard) row references in the given sheet.
+    */
+   public SortedSet<Integer> getAbsoluteRowNumbers(String sheetName, String currentSheetName)
+   {
+      SortedSet<Integer> rowNumbers = new TreeSet<>();
+      for (Reference reference : references) {
+         if (reference.resolveSheetName(currentSheetName).equals(sheetName) && !reference.isRowWildcard()) {
+            rowNumbers.add(reference.getRowNumber());
+         }
+      }
+      return rowNumbers;
+   }
+
+   /**
+    * Returns true if any reference in the given sheet reads the current row, so the expression depends on the
+    * row being rendered.
+    */
+   public boolean hasRowWildcard(String sheetName, String currentSheetName)
+   {
+      for (Reference reference : references) {
+         if (reference.resolveSheetName(currentSheetName).equals(sheetName) && reference.isRowWildcard()) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   public Set<ShiftDirection> getShiftDirections(String sheetName, String currentSheetName)
+   {
+      Set<ShiftDirection> directions = EnumSet.noneOf(ShiftDirection.class);
+      for (Reference reference : references) {
+         if (reference.resolveSheetName(currentSheetName).equals(sheetName)) {
+            reference.getShiftDirection().ifPresent(directions::add);
+         }
+      }
+      return directions;
+   }
+
+   @Override
+   public String toString()
+   {
+      return "ReferenceFootprint" + references;
+   }
+
+   private static int findDeclarationReference(String expression)
+   {
+      int position = skipWhitespace(expression, 0);
+      for (String keyword : DECLARATION_KEYWORDS) {
+         if (expression.startsWith(keyword, position)) {
+            position = skipWhitespace(expression, position + keyword.length());
+            if (position < expression.length() && expression.charAt(position) == '@') {
+               return position;
+            }
+         }
+      }
+      return -1;
+   }
+
+   /**
+    * Reads the reference address starting at the <tt>@</tt> at the given position and, if the address is well
+    * formed, records it. Returns the position just after the address.
+    */
+   private static int readReference(String expression, int start, boolean declaration, Defaults defaults,
+         List<Reference> references)
+   {
+      int length = expression.length();
+      int position = start + 1;
+      String sheetName = null;
+
+      if (position < length && expression.charAt(position) == '\'') {
+         StringBuilder name = new StringBuilder();
+         position++;
+         while (position < length) {
+            char c = expression.charAt(position);
+            if (c == '\'') {
+               if (position + 1 < length && expression.charAt(position + 1) == '\'') {
+                  name.append('\'');
+                  position += 2;
+                  continue;
+               }
+               break;
+            }
+            name.append(c);
+            position++;
+         }
+         if (position + 1 >= length || expression.charAt(position + 1) != '!') {
+            return start + 1;
+         }
+         sheetName = name.toString();
+         position += 2;
+      } else {
+         int end = position;
+         while (end < length && (Character.isLetterOrDigit(expression.charAt(end)) || expression.charAt(end) == '_')) {
+            end++;
+         }
+         if (end > position && end < length && expression.charAt(end) == '!') {
+            sheetName = expression.substring(position, end);
+            position = end + 1;
+         }
+      }
+
+      int columnNumber;
+      if (position < length && expression.charAt(position) == '*') {
+         columnNumber = CURRENT;
+         position++;
+      } else {
+         int end = position;
+         while (end < length && isColumnLetter(expression.charAt(end))) {
+            end++;
+         }
+         if (end == position) {
+            return start + 1;
+         }
+         columnNumber = columnNumber(expression.substring(position, end));
+         position = end;
+      }
+
+      int rowNumber;
+      if (position < length && expression.charAt(position) == '*') {
+         rowNumber = CURRENT;
+         position++;
+      } else {
+         int end = position;
+         while (end < length && Character.isDigit(expression.charAt(end))) {
+            end++;
+         }
+         if (end == position) {
+            return start + 1;
+         }
+         rowNumber = Integer.parseInt(expression.substring(position, end));
+         position = end;
+      }
+
+      Set<String> directives = Collections.emptySet();
+      if (position < length && expression.charAt(position) == '(') {
+         directives = readDirectives(expression, position);
+      }
+      references.add(new Reference(sheetName, columnNumber, rowNumber, directives, declaration, defaults));
+      return position;
+   }
+
+   /**
+    * Collects the <tt>mm:</tt> names that appear directly in the options starting at the given opening
+    * parenthesis, ignoring those that belong to nested references or function arguments.
+    */
+   private static Set<String> readDirectives(String expression, int open)
+   {
+      Set<String> directives = new LinkedHashSet<>();
+      int depth = 0;
+      int position = open;
+      while (position < expression.length()) {
+         char c = expression.charAt(position);
+         if (c == '"') {
+            position = skipString(expression, position);
+            continue;
+         }
+         if (c == '(') {
+            depth++;
+         } else if (c == ')') {
+            if (--depth == 0) {
+               break;
+            }
+         } else if (depth == 1 && expression.startsWith("mm:", position)) {
+            int end = position + 3;
+            while (end < expression.length() && Character.isLetter(expression.charAt(end))) {
+               end++;
+            }
+            directives.add(expression.substring(position, end));
+            position = end;
+            continue;
+         }
+         position++;
+      }
+      return directives;
+   }
+
+   /**
+    * Converts a setting constant such as <tt>SKIP_IF_EMPTY_LOCATION</tt> to the directive naming the same
+    * handling, <tt>mm:SkipIfEmptyLocation</tt>.
+    */
+   private static String toDirective(Enum<?> setting)
+   {
+      StringBuilder directive = new StringBuilder(DIRECTIVE_PREFIX);
+      for (String word : setting.name().split("_")) {
+         directive.append(word.charAt(0)).append(word.substring(1).toLowerCase());
+      }
+      return directive.toString();
+   }
+
+   private static int skipString(String expression, int open)
+   {
+      int position = open + 1;
+      while (position < expression.length()) {
+         char c = expression.charAt(position);
+         if (c == '\\') {
+            position += 2;
+         } else if (c == '"') {
+            return position + 1;
+         } else {
+            position++;
+         }
+      }
+      return position;
+   }
+
+   private static int skipWhitespace(String expression, int position)
+   {
+      while (position < expression.length() && Character.isWhitespace(expression.charAt(position))) {
+         position++;
+      }
+      return position;
+   }
+
+   private static boolean isColumnLetter(char c)
+   {
+      return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+   }
+
+   /**
+    * Converts a column name such as <tt>A</tt> or <tt>AB</tt> to its 1-based column number.
+    */
+   static int columnNumber(String columnName)
+   {
+      int number = 0;
+      for (int i = 0; i < columnName.length(); i++) {
+         number = number * 26 + (Character.toUpperCase(columnName.charAt(i)) - 'A' + 1);
+      }
+      return number;
+   }
+
+   /**
+    * Converts a 1-based column number to its column name, the inverse of {@link #columnNumber(String)}.
+    */
+   static String columnName(int columnNumber)
+   {
+      StringBuilder name = new StringBuilder();
+      for (int number = columnNumber; number > 0; number = (number - 1) / 26) {
+         name.insert(0, (char) ('A' + (number - 1) % 26));
+      }
+      return name.toString();
+   }
+
+   /**
+    * A single <tt>@</tt> reference found in an expression.
+    */
+   public static class Reference
+   {
+      private final String sheetName;
+      private final int columnNumber;
+      private final int rowNumber;
+      private final Set<String> directives;
+      private final ShiftDirection shiftDirection;
+      private final String emptyLocationDirective;
+      private final boolean declaration;
+
+      private Reference(String sheetName, int columnNumber, int rowNumber, Set<String> directives,
+            boolean declaration, Defaults defaults)
+      {
+         this.sheetName = sheetName;
+         this.columnNumber = columnNumber;
+         this.rowNumber = rowNumber;
+         this.directives = Collections.unmodifiableSet(directives);
+         ShiftDirection shiftDirection = findShiftDirection(directives);
+         this.shiftDirection = shiftDirection != null ? shiftDirection : defaults.shiftDirection;
+         String emptyLocationDirective = findEmptyLocationDirective(directives);
+         this.emptyLocationDirective = emptyLocationDirective != null ? emptyLocationDirective
+               : defaults.emptyLocationDirective;
+         this.declaration = declaration;
+      }
+
+      /**
+       * Returns the sheet named in the reference, or an empty optional if the reference reads the current sheet.
+       */
+      public Optional<String> getSheetName()
+      {
+         return Optional.ofNullable(sheetName);
+      }
+
+      public String resolveSheetName(String currentSheetName)
+      {
+         return sheetName != null ? sheetName : currentSheetName;
+      }
+
+      public int getColumnNumber()
+      {
+         return columnNumber;
+      }
+
+      public int getRowNumber()
+      {
+         return rowNumber;
+      }
+
+      public boolean isColumnWildcard()
+      {
+         return columnNumber == CURRENT;
+      }
+
+      public boolean isRowWildcard()
+      {
+         return rowNumber == CURRENT;
+      }
+
+      /**
+       * Returns the <tt>mm:</tt> directives written in the reference's options, without any defaults.
+       */
+      public Set<String> getDirectives()
+      {
+         return directives;
+      }
+
+      public boolean hasDirective(String directive)
+      {
+         return directives.contains(directive);
+      }
+
+      /**
+       * Returns the direction the reference shifts in, given by its own directive or else by the default of the
+       * settings the footprint was built with.
+       */
+      public Optional<ShiftDirection> getShiftDirection()
+      {
+         return Optional.ofNullable(shiftDirection);
+      }
+
+      /**
+       * Returns the directive, such as <tt>mm:SkipIfEmptyLocation</tt>, saying how the reference handles an
+       * empty cell: its own, or else the default of the settings the footprint was built with.
+       */
+      public Optional<String> getEmptyLocationDirective()
+      {
+         return Optional.ofNullable(emptyLocationDirective);
+      }
+
+      /**
+       * Returns the shift direction, or null if the reference is not shifted. Used where resolution must not
+       * allocate.
+       */
+      ShiftDirection shiftDirection()
+      {
+         return shiftDirection;
+      }
+
+      private static ShiftDirection findShiftDirection(Set<String> directives)
+      {
+         for (String directive : directives) {
+            ShiftDirection direction = ShiftDirection.forDirective(directive);
+            if (direction != null) {
+               return direction;
+            }
+         }
+         return null;
+      }
+
+      private static String findEmptyLocationDirective(Set<String> directives)
+      {
+         for (String directive : directives) {
+            if (directive.endsWith(EMPTY_LOCATION_SUFFIX)) {
+               return directive;
+            }
+         }
+         return null;
+      }
+
+      /**
+       * Returns true if this is the reference naming the entity declared by the expression, as in
+       * <tt>Class: @A*</tt>.
+       */
+      public boolean isDeclaration()
+      {
+         return declaration;
+      }
+
+      @Override
+      public String toString()
+      {
+         StringBuilder builder = new StringBuilder("@");
+         if (sheetName != null) {
+            builder.append('\'').append(sheetName).append("'!");
+         }
+         builder.append(isColumnWildcard() ? "*" : columnName(columnNumber));
+         builder.append(isRowWildcard() ? "*" : String.valueOf(rowNumber));
+         if (!directives.isEmpty()) {
+            builder.append(directives);
+         }
+         return builder.toString();
+      }
+   }
+
+   /**
+    * The shift and empty location handling of references that give none of their own.
+    */
+   private static class Defaults
+   {
+      private final ShiftDirection shiftDirection;
+      private final String emptyLocationDirective;
+
+      private Defaults(ShiftDirection shiftDirection, String emptyLocationDirective)
+      {
+         this.shiftDirection = shiftDirection;
+         this.emptyLocationDirective = emptyLocationDirective;
+      }
+   }
+}
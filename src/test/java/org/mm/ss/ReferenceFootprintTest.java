@@ -0,0 +1,111 @@
+package org.mm.ss;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.Test;
+import org.mm.core.settings.EmptyLocationSetting;
+import org.mm.core.settings.ReferenceSettings;
+import org.mm.core.settings.ShiftSetting;
+
+public class ReferenceFootprintTest
+{
+   private static final String SHEET1 = "Sheet1";
+   private static final String SHEET2 = "Sheet2";
+
+   @Test
+   public void TestNoReferences()
+   {
+      ReferenceFootprint footprint = ReferenceFootprint.of("Class: Car SubClassOf: Vehicle");
+
+      assertThat(footprint.isEmpty(), is(true));
+      assertThat(footprint.getSheetNames(SHEET1), is(empty()));
+   }
+
+   @Test
+   public void TestAbsoluteReferenceInNamedSheet()
+   {
+      ReferenceFootprint footprint = ReferenceFootprint.of("Class: @'Sheet2'!B3");
+
+      assertThat(footprint.getSheetNames(SHEET1), contains(SHEET2));
+      assertThat(footprint.getColumnNumbers(SHEET2, SHEET1, 1), contains(2));
+      assertThat(footprint.getAbsoluteRowNumbers(SHEET2, SHEET1), contains(3));
+      assertThat(footprint.hasRowWildcard(SHEET2, SHEET1), is(false));
+   }
+
+   @Test
+   public void TestNestedReferencesWithShifts()
+   {
+      ReferenceFootprint footprint = ReferenceFootprint
+            .of("Class: @A*(mm:append(@B*(mm:ShiftDown), @C*(mm:ShiftRight)))");
+
+      assertThat(footprint.getReferences(), hasSize(3));
+      assertThat(footprint.getColumnNumbers(SHEET1, SHEET1, 1), contains(1, 2, 3));
+      assertThat(footprint.hasRowWildcard(SHEET1, SHEET1), is(true));
+      assertThat(footprint.getShiftDirections(SHEET1, SHEET1),
+            containsInAnyOrder(ShiftDirection.DOWN, ShiftDirection.RIGHT));
+      assertThat(footprint.getReferences().get(0).getShiftDirection().isPresent(), is(false));
+   }
+
+   @Test
+   public void TestDeclarationReference()
+   {
+      ReferenceFootprint footprint = ReferenceFootprint
+            .of("Individual: @A*(mm:SkipIfEmptyLocation) Facts: hasName @B*(mm:SkipIfEmptyLiteral)");
+
+      assertThat(footprint.getDeclarationReference().isPresent(), is(true));
+      assertThat(footprint.getDeclarationReference().get().getColumnNumber(), is(1));
+      assertThat(footprint.getDeclarationReference().get().hasDirective("mm:SkipIfEmptyLocation"), is(true));
+      assertThat(footprint.getReferences().get(1).isDeclaration(), is(false));
+   }
+
+   @Test
+   public void TestSettingsDefaultsApplyToReferencesWithoutDirectives()
+   {
+      ReferenceSettings settings = new ReferenceSettings();
+      settings.setShiftSetting(ShiftSetting.SHIFT_DOWN);
+      settings.setEmptyLocationSetting(EmptyLocationSetting.SKIP_IF_EMPTY_LOCATION);
+      ReferenceFootprint footprint = ReferenceFootprint
+            .of("Class: @A* SubClassOf: @B*(mm:ShiftUp mm:ErrorIfEmptyLocation)", settings);
+
+      ReferenceFootprint.Reference declaration = footprint.getReferences().get(0);
+      assertThat(declaration.getShiftDirection().get(), is(ShiftDirection.DOWN));
+      assertThat(declaration.getEmptyLocationDirective().get(), is("mm:SkipIfEmptyLocation"));
+      assertThat(declaration.getDirectives(), is(empty()));
+
+      ReferenceFootprint.Reference parent = footprint.getReferences().get(1);
+      assertThat(parent.getShiftDirection().get(), is(ShiftDirection.UP));
+      assertThat(parent.getEmptyLocationDirective().get(), is("mm:ErrorIfEmptyLocation"));
+   }
+
+   @Test
+   public void TestColumnWildcardResolvesToCurrentColumn()
+   {
+      ReferenceFootprint footprint = ReferenceFootprint.of("Class: @*1");
+
+      assertThat(footprint.getColumnNumbers(SHEET1, SHEET1, 4), contains(4));
+      assertThat(footprint.getAbsoluteRowNumbers(SHEET1, SHEET1), contains(1));
+   }
+
+   @Test
+   public void TestAtSignInStringLiteralIsIgnored()
+   {
+      ReferenceFootprint footprint = ReferenceFootprint.of("Class: @A1(mm:prepend(\"@B2\"))");
+
+      assertThat(footprint.getReferences(), hasSize(1));
+      assertThat(footprint.getColumnNumbers(SHEET1, SHEET1, 1), contains(1));
+   }
+
+   @Test
+   public void TestMultiLetterColumn()
+   {
+      ReferenceFootprint footprint = ReferenceFootprint.of("Class: @AB12");
+
+      assertThat(footprint.getColumnNumbers(SHEET1, SHEET1, 1), contains(28));
+      assertThat(footprint.getAbsoluteRowNumbers(SHEET1, SHEET1), contains(12));
+   }
+}
@@ -0,0 +1,212 @@
+package org.mm.ss;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+
+/**
+ * Which cells of each sheet hold a value, kept as one {@link BitSet} of populated rows per column. Deciding that
+ * a location is empty is then a single bit test, with no cell lookup or string work, which lets a renderer drop a
+ * row that a skip directive would discard before resolving anything. The per-column counts also give the fill
+ * ratio of each column for planning.
+ * <p>
+ * Occupancy is decided on the raw cell value, not its formatted text, so a cell whose number format hides its
+ * value (such as <tt>;;;</tt>) still counts as populated. A blank cell, or one holding only an empty string,
+ * counts as empty, as it does for the empty-location directives.
+ */
+public class SheetOccupancy
+{
+   private final Map<String, SheetBits> sheets = new LinkedHashMap<>();
+
+   private SheetOccupancy()
+   {
+      // Built by the factory methods
+   }
+
+   public static SheetOccupancy of(Workbook workbook)
+   {
+      List<String> sheetNames = new ArrayList<>();
+      for (int i = 0; i < workbook.getNumberOfSheets(); i++) {
+         sheetNames.add(workbook.getSheetName(i));
+      }
+      return of(workbook, sheetNames);
+   }
+
+   /**
+    * Builds the occupancy of the named sheets only. Names of sheets not in the workbook are ignored.
+    */
+   public static SheetOccupancy of(Workbook workbook, Collection<String> sheetNames)
+   {
+      SheetOccupancy occupancy = new SheetOccupancy();
+      for (String sheetName : sheetNames) {
+         Sheet sheet = workbook.getSheet(sheetName);
+         if (sheet == null || occupancy.sheets.containsKey(sheetName)) {
+            continue;
+         }
+         SheetBits bits = new SheetBits();
+         for (Row row : sheet) {
+            for (Cell cell : row) {
+               if (hasValue(cell)) {
+                  bits.set(cell.getColumnIndex() + 1, cell.getRowIndex() + 1);
+               }
+            }
+         }
+         occupancy.sheets.put(sheetName, bits);
+      }
+      return occupancy;
+   }
+
+   /**
+    * Builds the occupancy of a columnar snapshot. The snapshot holds formatted text, so here a cell whose format
+    * hides its value counts as empty.
+    */
+   public static SheetOccupancy of(ColumnarWorkbook workbook)
+   {
+      SheetOccupancy occupancy = new SheetOccupancy();
+      for (ColumnarSheet sheet : workbook.getSheets().values()) {
+         SheetBits bits = new SheetBits();
+         for (int columnNumber = 1; columnNumber <= sheet.getColumnCount(); columnNumber++) {
+            int[] codes = sheet.getColumnCodes(columnNumber);
+            for (int i = 0; i < codes.length; i++) {
+               if (codes[i] != 0) {
+                  bits.set(columnNumber, i + 1);
+               }
+            }
+         }
+         occupancy.sheets.put(sheet.getSheetName(), bits);
+      }
+      return occupancy;
+   }
+
+   public boolean hasSheet(String sheetName)
+   {
+      return sheets.containsKey(sheetName);
+   }
+
+   /**
+    * Returns true if the cell at the given 1-based column and row holds no value.
+    *
+    * @throws IllegalArgumentException
+    *            If the sheet is unknown
+    */
+   public boolean isEmpty(String sheetName, int columnNumber, int rowNumber)
+   {
+      BitSet column = getSheet(sheetName).getColumn(columnNumber);
+      return column == null || rowNumber < 1 || !column.get(rowNumber - 1);
+   }
+
+   /**
+    * Returns the 0-based indexes of the populated rows of a column, i.e. row number minus one. The returned set
+    * is a copy.
+    */
+   public BitSet getPopulatedRows(String sheetName, int columnNumber)
+   {
+      BitSet column = getSheet(sheetName).getColumn(columnNumber);
+      return column == null ? new BitSet() : (BitSet) column.clone();
+   }
+
+   public int getPopulatedCount(String sheetName, int columnNumber)
+   {
+      BitSet column = getSheet(sheetName).getColumn(columnNumber);
+      return column == null ? 0 : column.cardinality();
+   }
+
+   /**
+    * Returns the 1-based number of the last row with a value in any column of the sheet.
+    */
+   public int getRowCount(String sheetName)
+   {
+      return getSheet(sheetName).rowCount;
+   }
+
+   public int getColumnCount(String sheetName)
+   {
+      return getSheet(sheetName).columns.length;
+   }
+
+   /**
+    * Returns the fraction of the sheet's rows, up to its last populated row, that have a value in the column.
+    */
+   public double getFillRatio(String sheetName, int columnNumber)
+   {
+      int rowCount = getRowCount(sheetName);
+      return rowCount == 0 ? 0.0 : (double) getPopulatedCount(sheetName, columnNumber) / rowCount;
+   }
+
+   @Override
+   public String toString()
+   {
+      StringBuilder builder = new StringBuilder("SheetOccupancy[");
+      String separator = "";
+      for (Map.Entry<String, SheetBits> entry : sheets.entrySet()) {
+         String sheetName = entry.getKey();
+         builder.append(separator).append(sheetName).append(": rows=").append(getRowCount(sheetName));
+         for (int columnNumber = 1; columnNumber <= getColumnCount(sheetName); columnNumber++) {
+            builder.append(String.format(", %s=%.2f", ReferenceFootprint.columnName(columnNumber),
+                  getFillRatio(sheetName, columnNumber)));
+         }
+         separator = "; ";
+      }
+      return builder.append(']').toString();
+   }
+
+   private static boolean hasValue(Cell cell)
+   {
+      CellType type = cell.getCellType();
+      if (type == CellType.FORMULA) {
+         type = cell.getCachedFormulaResultType();
+      }
+      switch (type) {
+      case BLANK:
+      case _NONE:
+         return false;
+      case STRING:
+         return !cell.getStringCellValue().isEmpty();
+      default:
+         return true;
+      }
+   }
+
+   private SheetBits getSheet(String sheetName)
+   {
+      SheetBits bits = sheets.get(sheetName);
+      if (bits == null) {
+         throw new IllegalArgumentException("Sheet name '" + sheetName + "' does not exist");
+      }
+      return bits;
+   }
+
+   private static class SheetBits
+   {
+      private BitSet[] columns = new BitSet[0];
+      private int rowCount = 0;
+
+      private void set(int columnNumber, int rowNumber)
+      {
+         if (columnNumber > columns.length) {
+            BitSet[] grown = new BitSet[columnNumber];
+            System.arraycopy(columns, 0, grown, 0, columns.length);
+            columns = grown;
+         }
+         if (columns[columnNumber - 1] == null) {
+            columns[columnNumber - 1] = new BitSet();
+         }
+         columns[columnNumber - 1].set(rowNumber - 1);
+         rowCount = Math.max(rowCount, rowNumber);
+      }
+
+      private BitSet getColumn(int columnNumber)
+      {
+         return columnNumber < 1 || columnNumber > columns.length ? null : columns[columnNumber - 1];
+      }
+   }
+}
@@ -0,0 +1,91 @@
+package org.mm.ss;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.Arrays;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+public class SheetOccupancyTest
+{
+   private static final String SHEET1 = "Sheet1";
+
+   @Test
+   public void TestEmptyCellsAndFillRatios() throws Exception
+   {
+      Workbook workbook = new XSSFWorkbook();
+      Sheet sheet = workbook.createSheet(SHEET1);
+      for (int i = 0; i < 4; i++) {
+         Row row = sheet.createRow(i);
+         row.createCell(0).setCellValue("Model" + i);
+         if (i == 0) {
+            row.createCell(1).setCellValue("Vehicle");
+         }
+         row.createCell(2).setCellValue(""); // Empty text counts as empty
+      }
+
+      SheetOccupancy occupancy = SheetOccupancy.of(workbook);
+
+      assertThat(occupancy.isEmpty(SHEET1, 1, 4), is(false));
+      assertThat(occupancy.isEmpty(SHEET1, 2, 2), is(true));
+      assertThat(occupancy.isEmpty(SHEET1, 3, 1), is(true));
+      assertThat(occupancy.isEmpty(SHEET1, 9, 9), is(true));
+      assertThat(occupancy.getRowCount(SHEET1), is(4));
+      assertThat(occupancy.getFillRatio(SHEET1, 1), is(1.0));
+      assertThat(occupancy.getFillRatio(SHEET1, 2), is(0.25));
+      assertThat(occupancy.getPopulatedRows(SHEET1, 2).nextSetBit(0), is(0));
+   }
+
+   @Test
+   public void TestSameAsColumnarSnapshot() throws Exception
+   {
+      Workbook workbook = new XSSFWorkbook();
+      Sheet sheet = workbook.createSheet(SHEET1);
+      sheet.createRow(0).createCell(0).setCellValue("Car");
+      sheet.createRow(5).createCell(3).setCellValue(7);
+
+      SheetOccupancy fromWorkbook = SheetOccupancy.of(workbook);
+      SheetOccupancy fromSnapshot = SheetOccupancy.of(ColumnarWorkbook.of(workbook));
+
+      assertThat(fromSnapshot.toString(), is(fromWorkbook.toString()));
+   }
+
+   @Test
+   public void TestHiddenValueIsPopulated() throws Exception
+   {
+      Workbook workbook = new XSSFWorkbook();
+      Sheet sheet = workbook.createSheet(SHEET1);
+      CellStyle hidden = workbook.createCellStyle();
+      hidden.setDataFormat(workbook.createDataFormat().getFormat(";;;"));
+      Cell cell = sheet.createRow(0).createCell(0);
+      cell.setCellValue("Car");
+      cell.setCellStyle(hidden);
+      sheet.getRow(0).createCell(1).setCellValue(42);
+      sheet.getRow(0).getCell(1).setCellStyle(hidden);
+
+      SheetOccupancy occupancy = SheetOccupancy.of(workbook);
+
+      assertThat(occupancy.isEmpty(SHEET1, 1, 1), is(false));
+      assertThat(occupancy.isEmpty(SHEET1, 2, 1), is(false));
+   }
+
+   @Test
+   public void TestOnlyNamedSheetsBuilt() throws Exception
+   {
+      Workbook workbook = new XSSFWorkbook();
+      workbook.createSheet(SHEET1).createRow(0).createCell(0).setCellValue("Car");
+      workbook.createSheet("Sheet2").createRow(0).createCell(0).setCellValue("Truck");
+
+      SheetOccupancy occupancy = SheetOccupancy.of(workbook, Arrays.asList("Sheet2"));
+
+      assertThat(occupancy.hasSheet(SHEET1), is(false));
+      assertThat(occupancy.isEmpty("Sheet2", 1, 1), is(false));
+   }
+}
@@ -0,0 +1,109 @@
+package org.mm.ss;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+
+/**
+ * A rectangular block of a sheet to render, given as inclusive 1-based column and row numbers. Rows are visited
+ * in order and, within each row, columns in order; the column visited is the current column that <tt>*</tt>
+ * column wildcards resolve to.
+ */
+public class SheetRange
+{
+   private final String sheetName;
+   private final int startColumnNumber;
+   private final int endColumnNumber;
+   private final int startRowNumber;
+   private final int endRowNumber;
+
+   public SheetRange(String sheetName, int startColumnNumber, int endColumnNumber, int startRowNumber,
+         int endRowNumber)
+   {
+      if (startColumnNumber < 1 || endColumnNumber < startColumnNumber) {
+         throw new IllegalArgumentException(
+               "Invalid column range " + startColumnNumber + " to " + endColumnNumber + " in sheet " + sheetName);
+      }
+      if (startRowNumber < 1 || endRowNumber < startRowNumber - 1) {
+         throw new IllegalArgumentException(
+               "Invalid row range " + startRowNumber + " to " + endRowNumber + " in sheet " + sheetName);
+      }
+      this.sheetName = sheetName;
+      this.startColumnNumber = startColumnNumber;
+      this.endColumnNumber = endColumnNumber;
+      this.startRowNumber = startRowNumber;
+      this.endRowNumber = endRowNumber;
+   }
+
+   /**
+    * Returns the range of rows in the given single column.
+    */
+   public static SheetRange ofRows(String sheetName, int startRowNumber, int endRowNumber)
+   {
+      return new SheetRange(sheetName, 1, 1, startRowNumber, endRowNumber);
+   }
+
+   /**
+    * Returns the range covering every row of the given sheet in column 1, from the first to the last physical
+    * row. An empty sheet gives an empty range.
+    */
+   public static SheetRange of(Sheet sheet)
+   {
+      Row firstRow = sheet.getRow(sheet.getFirstRowNum());
+      if (firstRow == null) {
+         return new SheetRange(sheet.getSheetName(), 1, 1, 1, 0);
+      }
+      return new SheetRange(sheet.getSheetName(), 1, 1, sheet.getFirstRowNum() + 1, sheet.getLastRowNum() + 1);
+   }
+
+   public SheetRange withColumns(int startColumnNumber, int endColumnNumber)
+   {
+      return new SheetRange(sheetName, startColumnNumber, endColumnNumber, startRowNumber, endRowNumber);
+   }
+
+   public SheetRange withRows(int startRowNumber, int endRowNumber)
+   {
+      return new SheetRange(sheetName, startColumnNumber, endColumnNumber, startRowNumber, endRowNumber);
+   }
+
+   public String getSheetName()
+   {
+      return sheetName;
+   }
+
+   public int getStartColumnNumber()
+   {
+      return startColumnNumber;
+   }
+
+   public int getEndColumnNumber()
+   {
+      return endColumnNumber;
+   }
+
+   public int getStartRowNumber()
+   {
+      return startRowNumber;
+   }
+
+   public int getEndRowNumber()
+   {
+      return endRowNumber;
+   }
+
+   public int getRowCount()
+   {
+      return endRowNumber - startRowNumber + 1;
+   }
+
+   public boolean isEmpty()
+   {
+      return getRowCount() == 0;
+   }
+
+   @Override
+   public String toString()
+   {
+      return "'" + sheetName + "'!" + ReferenceFootprint.columnName(startColumnNumber) + startRowNumber + ":"
+            + ReferenceFootprint.columnName(endColumnNumber) + endRowNumber;
+   }
+}
@@ -0,0 +1,20 @@
+package org.mm.ss;
+
+import java.io.IOException;
+
+import org.mm.ss.StreamingSheetReader.RowHandler;
+
+/**
+ * A source of sheet rows that can be read forward from the first row to the last without loading the whole
+ * sheet.
+ */
+public interface SheetRowSource
+{
+   /**
+    * Passes every non-empty row of the named sheet to the handler, in row order.
+    *
+    * @throws IOException
+    *            If the source cannot be read or has no sheet with the given name
+    */
+   void read(String sheetName, RowHandler handler) throws IOException;
+}
@@ -0,0 +1,54 @@
+package org.mm.ss;
+
+/**
+ * The direction in which a reference carrying one of the <tt>mm:Shift</tt> directives searches for the nearest
+ * non-empty cell.
+ */
+public enum ShiftDirection
+{
+   UP("mm:ShiftUp", 0, -1),
+   DOWN("mm:ShiftDown", 0, 1),
+   LEFT("mm:ShiftLeft", -1, 0),
+   RIGHT("mm:ShiftRight", 1, 0);
+
+   private final String directive;
+   private final int columnStep;
+   private final int rowStep;
+
+   ShiftDirection(String directive, int columnStep, int rowStep)
+   {
+      this.directive = directive;
+      this.columnStep = columnStep;
+      this.rowStep = rowStep;
+   }
+
+   public String getDirective()
+   {
+      return directive;
+   }
+
+   public int getColumnStep()
+   {
+      return columnStep;
+   }
+
+   public int getRowStep()
+   {
+      return rowStep;
+   }
+
+   public boolean isVertical()
+   {
+      return columnStep == 0;
+   }
+
+   public static ShiftDirection forDirective(String directive)
+   {
+      for (ShiftDirection direction : values()) {
+         if (direction.directive.equals(directive)) {
+            return direction;
+         }
+      }
+      return null;
+   }
+}
@@ -0,0 +1,275 @@
+package org.mm.ss;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.mm.exceptions.MappingMasterException;
+import org.mm.ss.StreamingSheetReader.SheetRow;
+
+/**
+ * Serves a large sheet to the renderers as a sequence of small {@link SpreadSheetDataSource} windows, read
+ * forward from a {@link SheetRowSource} such as {@link StreamingSheetReader} instead of loading the whole
+ * workbook. Each window holds a block of rows to render plus a number of rows before and after it, at their
+ * original row numbers, so references to the current row and shifts that stay within that distance resolve
+ * exactly as in the full sheet.
+ * <p>
+ * Two kinds of reference are handled beyond the window:
+ * <ul>
+ * <li>rows read by absolute references (e.g. a header row in <tt>@B1</tt>) are kept for every window; rows
+ * beyond the first window are found by an extra pass over the sheet before streaming starts; and</li>
+ * <li>for <tt>mm:ShiftUp</tt>, the last non-empty value of each column before the window is carried into the row
+ * just above it, so a shift up reaches a parent value however far back it appeared.</li>
+ * </ul>
+ * A <tt>mm:ShiftDown</tt> may have to search past any look-ahead, and the rows of absolute references are held
+ * at their real row numbers, where a shift down could stop on them instead of on the nearest value. So if the
+ * footprint shifts down in the sheet, the whole sheet is passed as a single window. References to other sheets
+ * are not served. Cells are written into the windows as their formatted string values.
+ * <p>
+ * The renderers read cells through a POI workbook, so each window is still written into an {@link XSSFWorkbook}.
+ * A new workbook is built for every window, as a reused one would keep every string it had ever held in its
+ * shared strings table. Populating it costs roughly what loading those rows into a full workbook would; the
+ * saving is in memory, which stays bounded by the window size, rather than in time.
+ */
+public class StreamingDataSource
+{
+   public static final int DEFAULT_WINDOW_ROWS = 1000;
+   public static final int DEFAULT_LOOK_BEHIND_ROWS = 16;
+   public static final int DEFAULT_LOOK_AHEAD_ROWS = 16;
+
+   private final SheetRowSource source;
+   private final String sheetName;
+   private final int windowRows;
+   private final int lookBehindRows;
+   private final int lookAheadRows;
+   private final SortedSet<Integer> pinnedRowNumbers;
+   private final boolean wholeSheet;
+
+   public StreamingDataSource(File file, String sheetName, ReferenceFootprint footprint)
+   {
+      this(file, sheetName, footprint, DEFAULT_WINDOW_ROWS, DEFAULT_LOOK_BEHIND_ROWS, DEFAULT_LOOK_AHEAD_ROWS);
+   }
+
+   public StreamingDataSource(File file, String sheetName, ReferenceFootprint footprint, int windowRows,
+         int lookBehindRows, int lookAheadRows)
+   {
+      this(new StreamingSheetReader(file), sheetName, footprint, windowRows, lookBehindRows, lookAheadRows);
+   }
+
+   public StreamingDataSource(SheetRowSource source, String sheetName, ReferenceFootprint footprint,
+         int windowRows, int lookBehindRows, int lookAheadRows)
+   {
+      if (windowRows < 1 || lookBehindRows < 0 || lookAheadRows < 0) {
+         throw new IllegalArgumentException("Invalid window of " + windowRows + " rows with " + lookBehindRows
+               + " rows behind and " + lookAheadRows + " rows ahead");
+      }
+      if (!footprint.getSheetNames(sheetName).equals(Collections.singleton(sheetName))
+            && !footprint.isEmpty()) {
+         throw new IllegalArgumentException("Only references to sheet '" + sheetName + "' can be streamed: "
+               + footprint.getSheetNames(sheetName));
+      }
+      this.source = source;
+      this.sheetName = sheetName;
+      this.windowRows = windowRows;
+      this.lookBehindRows = lookBehindRows;
+      this.lookAheadRows = lookAheadRows;
+      this.pinnedRowNumbers = new TreeSet<>(footprint.getAbsoluteRowNumbers(sheetName, sheetName));
+      this.wholeSheet = footprint.getShiftDirections(sheetName, sheetName).contains(ShiftDirection.DOWN);
+   }
+
+   /**
+    * Returns true if the footprint shifts down in the sheet, so the sheet is passed as one window.
+    */
+   public boolean isWholeSheet()
+   {
+      return wholeSheet;
+   }
+
+   /**
+    * Reads the sheet from start to end, calling the handler once for each consecutive block of rows. Windows
+    * are passed in row order; a window's data source should not be kept once the handler returns.
+    */
+   public void forEachWindow(WindowHandler handler) throws IOException, MappingMasterException
+   {
+      TreeMap<Integer, SheetRow> pinnedRows = readPinnedRows();
+      try {
+         WindowBuilder builder = new WindowBuilder(handler, pinnedRows);
+         source.read(sheetName, builder::add);
+         builder.finish();
+      } catch (HandlerException e) {
+         throw e.getCause();
+      }
+   }
+
+   /**
+    * Reads the rows of absolute references ahead of streaming if any of them lies beyond the first window, which
+    * would otherwise be rendered before those rows are reached.
+    */
+   private TreeMap<Integer, SheetRow> readPinnedRows() throws IOException
+   {
+      TreeMap<Integer, SheetRow> pinnedRows = new TreeMap<>();
+      if (wholeSheet || pinnedRowNumbers.isEmpty() || pinnedRowNumbers.last() <= windowRows + lookAheadRows) {
+         return pinnedRows;
+      }
+      source.read(sheetName, row -> {
+         if (pinnedRowNumbers.contains(row.getRowNumber())) {
+            pinnedRows.put(row.getRowNumber(), row);
+         }
+      });
+      return pinnedRows;
+   }
+
+   /**
+    * Receives each window of the sheet. The rows to render in a window are <tt>firstRowNumber</tt> to
+    * <tt>lastRowNumber</tt> inclusive; the data source also holds the surrounding rows.
+    */
+   @FunctionalInterface
+   public interface WindowHandler
+   {
+      void window(SpreadSheetDataSource dataSource, int firstRowNumber, int lastRowNumber)
+            throws MappingMasterException;
+   }
+
+   private class WindowBuilder
+   {
+      private final WindowHandler handler;
+      private final Deque<SheetRow> rows = new ArrayDeque<>();
+      private final TreeMap<Integer, SheetRow> pinnedRows;
+      private String[] carriedValues = new String[0];
+      private int firstRowNumber = 1;
+      private int lastRowNumberRead = 0;
+
+      private WindowBuilder(WindowHandler handler, TreeMap<Integer, SheetRow> pinnedRows)
+      {
+         this.handler = handler;
+         this.pinnedRows = pinnedRows;
+      }
+
+      private void add(SheetRow row)
+      {
+         if (pinnedRowNumbers.contains(row.getRowNumber())) {
+            pinnedRows.put(row.getRowNumber(), row);
+         }
+         rows.addLast(row);
+         lastRowNumberRead = row.getRowNumber();
+         while (lastRowNumberRead >= lastRowNumber() + lookAheadRows) {
+            emitWindow();
+         }
+      }
+
+      private void finish()
+      {
+         while (firstRowNumber <= lastRowNumberRead) {
+            emitWindow();
+         }
+      }
+
+      private long lastRowNumber()
+      {
+         return wholeSheet ? Integer.MAX_VALUE : (long) firstRowNumber + windowRows - 1;
+      }
+
+      private void emitWindow()
+      {
+         int lastRowNumber = (int) Math.min(lastRowNumber(), Math.max(firstRowNumber, lastRowNumberRead));
+         // An in-memory workbook holds no file or stream, so it is dropped rather than closed
+         Workbook workbook = new XSSFWorkbook();
+         fillWindow(workbook.createSheet(sheetName), lastRowNumber);
+         try {
+            handler.window(new SpreadSheetDataSource(workbook), firstRowNumber, lastRowNumber);
+         } catch (MappingMasterException e) {
+            throw new HandlerException(e);
+         }
+         firstRowNumber = lastRowNumber + 1;
+         int keepFrom = firstRowNumber - lookBehindRows;
+         while (!rows.isEmpty() && rows.peekFirst().getRowNumber() < keepFrom) {
+            carry(rows.removeFirst());
+         }
+      }
+
+      private void carry(SheetRow row)
+      {
+         if (carriedValues.length < row.getColumnCount()) {
+            carriedValues = Arrays.copyOf(carriedValues, row.getColumnCount());
+         }
+         for (int columnNumber = 1; columnNumber <= row.getColumnCount(); columnNumber++) {
+            String value = row.getValue(columnNumber);
+            if (value != null) {
+               carriedValues[columnNumber - 1] = value;
+            }
+         }
+      }
+
+      private void fillWindow(Sheet sheet, int lastRowNumber)
+      {
+         // Every row above the look-behind has been folded into the carried values
+         int carryRowNumber = firstRowNumber - lookBehindRows - 1;
+         Set<Integer> written = new HashSet<>();
+         for (SheetRow row : rows) {
+            if (row.getRowNumber() > lastRowNumber + lookAheadRows) {
+               break;
+            }
+            writeRow(sheet, row.getRowNumber(), row, null);
+            written.add(row.getRowNumber());
+         }
+         for (SheetRow row : pinnedRows.values()) {
+            if (!written.contains(row.getRowNumber())) {
+               writeRow(sheet, row.getRowNumber(), row, row.getRowNumber() == carryRowNumber ? carriedValues : null);
+               written.add(row.getRowNumber());
+            }
+         }
+         if (carryRowNumber >= 1 && !written.contains(carryRowNumber) && carriedValues.length > 0) {
+            writeRow(sheet, carryRowNumber, new SheetRow(carryRowNumber, carriedValues), null);
+         }
+      }
+
+      /**
+       * Writes the row's values, filling any empty cells from the fallback values if given.
+       */
+      private void writeRow(Sheet sheet, int rowNumber, SheetRow row, String[] fallbackValues)
+      {
+         Row sheetRow = sheet.createRow(rowNumber - 1);
+         int columnCount = Math.max(row.getColumnCount(), fallbackValues == null ? 0 : fallbackValues.length);
+         for (int columnNumber = 1; columnNumber <= columnCount; columnNumber++) {
+            String value = row.getValue(columnNumber);
+            if (value == null && fallbackValues != null && columnNumber <= fallbackValues.length) {
+               value = fallbackValues[columnNumber - 1];
+            }
+            if (value != null) {
+               sheetRow.createCell(columnNumber - 1).setCellValue(value);
+            }
+         }
+      }
+   }
+
+   /**
+    * Carries a window handler's error out through the sheet reader.
+    */
+   private static class HandlerException extends RuntimeException
+   {
+      private static final long serialVersionUID = 1L;
+
+      private HandlerException(MappingMasterException cause)
+      {
+         super(cause);
+      }
+
+      @Override
+      public synchronized MappingMasterException getCause()
+      {
+         return (MappingMasterException) super.getCause();
+      }
+   }
+}
@@ -0,0 +1,137 @@
+package org.mm.ss;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.poi.ss.usermodel.Workbook;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mm.core.OWLAPIOntology;
+import org.mm.core.settings.ReferenceSettings;
+import org.mm.core.settings.ValueEncodingSetting;
+import org.mm.renderer.ExpressionPlan;
+import org.mm.renderer.IntegrationTestBase;
+import org.mm.renderer.owlapi.AxiomSink;
+import org.mm.renderer.owlapi.SheetRenderer;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+public class StreamingDataSourceTest extends IntegrationTestBase
+{
+   private static final int ROW_COUNT = 40;
+
+   @Rule
+   public final TemporaryFolder folder = new TemporaryFolder();
+
+   private OWLOntology ontology;
+   private ReferenceSettings settings;
+
+   @Before
+   public void setUp() throws Exception
+   {
+      ontology = createOWLOntology();
+      settings = new ReferenceSettings();
+      settings.setValueEncodingSetting(ValueEncodingSetting.RDF_ID);
+   }
+
+   @Test
+   public void TestStreamedWindowsMatchFullSheet() throws Exception
+   {
+      Set<Label> cells = new HashSet<>();
+      cells.add(createCell("Vehicle", 3, 1)); // Header cell read by an absolute reference
+      for (int row = 1; row <= ROW_COUNT; row++) {
+         cells.add(createCell("Model" + row, 1, row));
+      }
+      // Parent values appear once above their children, far further apart than the look-behind
+      cells.add(createCell("Car", 2, 1));
+      cells.add(createCell("Truck", 2, 25));
+
+      String expression = "Class: @A* SubClassOf: @B*(mm:ShiftUp), @C1";
+      assertStreamedRenderingMatches(cells, expression);
+   }
+
+   @Test
+   public void TestAbsoluteRowBeyondFirstWindow() throws Exception
+   {
+      Set<Label> cells = new HashSet<>();
+      for (int row = 1; row <= ROW_COUNT; row++) {
+         cells.add(createCell("Model" + row, 1, row));
+      }
+      cells.add(createCell("Vehicle", 3, 30)); // Read by every row, but only reached in the fourth window
+
+      String expression = "Class: @A* SubClassOf: @C30";
+      assertStreamedRenderingMatches(cells, expression);
+   }
+
+   @Test
+   public void TestShiftDownStreamsWholeSheet() throws Exception
+   {
+      Set<Label> cells = new HashSet<>();
+      for (int row = 1; row <= ROW_COUNT; row++) {
+         cells.add(createCell("Model" + row, 1, row));
+      }
+      // Gaps longer than the look-ahead, and a value in the absolute row that a windowed shift would stop on
+      cells.add(createCell("Group20", 2, 20));
+      cells.add(createCell("Group35", 2, 35));
+      cells.add(createCell("Group40", 2, 40));
+      cells.add(createCell("Vehicle", 3, 35));
+
+      String expression = "Class: @A* SubClassOf: @B*(mm:ShiftDown), @C35";
+      int windowCount = assertStreamedRenderingMatches(cells, expression);
+      assertThat(windowCount, is(1));
+   }
+
+   /**
+    * Renders the sheet both whole and streamed, checks that both give the same axioms in the same order, and
+    * returns the number of windows streamed.
+    */
+   private int assertStreamedRenderingMatches(Set<Label> cells, String expression) throws Exception
+   {
+      Workbook workbook = createWorkbook(SHEET1, cells);
+      File file = folder.newFile("streamed.xlsx");
+      try (OutputStream out = new FileOutputStream(file)) {
+         workbook.write(out);
+      }
+      ExpressionPlan plan = compileExpression(expression, settings);
+      List<ExpressionPlan> plans = Arrays.asList(plan);
+
+      OrderedSink expected = new OrderedSink();
+      new SheetRenderer(new OWLAPIOntology(ontology), new SpreadSheetDataSource(workbook))
+            .renderSheet(SheetRange.ofRows(SHEET1, 1, ROW_COUNT), plans, expected);
+
+      OrderedSink streamed = new OrderedSink();
+      List<Integer> windowStarts = new ArrayList<>();
+      StreamingDataSource source = new StreamingDataSource(file, SHEET1, plan.getFootprint(), 8, 2, 4);
+      source.forEachWindow((dataSource, firstRowNumber, lastRowNumber) -> {
+         windowStarts.add(firstRowNumber);
+         new SheetRenderer(new OWLAPIOntology(ontology), dataSource)
+               .renderSheet(SheetRange.ofRows(SHEET1, firstRowNumber, lastRowNumber), plans, streamed);
+      });
+
+      assertThat(streamed.axioms, is(equalTo(expected.axioms)));
+      return windowStarts.size();
+   }
+
+   private static class OrderedSink implements AxiomSink
+   {
+      private final List<OWLAxiom> axioms = new ArrayList<>();
+
+      @Override
+      public void accept(int expressionIndex, int rowNumber, OWLAxiom axiom)
+      {
+         axioms.add(axiom);
+      }
+   }
+}
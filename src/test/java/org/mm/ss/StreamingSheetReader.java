@@ -0,0 +1,364 @@
+package org.mm.ss;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+/**
+ * Reads the rows of one sheet of an XLSX file with the XSSF event (SAX) API, so only the row being parsed is
+ * held in memory rather than the whole workbook. Cell values are delivered as the formatted strings a user sees
+ * in the sheet.
+ * <p>
+ * A reader created to record cell types also delivers the raw value of numeric and boolean cells, and the number
+ * format of numeric ones, so a reader can rebuild typed cells (dates are numeric cells with a date format).
+ * Recording them costs a boxed value per such cell, so it is off by default.
+ */
+public class StreamingSheetReader implements SheetRowSource
+{
+   private final File file;
+   private final boolean recordTypes;
+
+   public StreamingSheetReader(File file)
+   {
+      this(file, false);
+   }
+
+   public StreamingSheetReader(File file, boolean recordTypes)
+   {
+      this.file = file;
+      this.recordTypes = recordTypes;
+   }
+
+   @Override
+   public void read(String sheetName, RowHandler handler) throws IOException
+   {
+      try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+         XSSFReader reader = new XSSFReader(pkg);
+         ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+         StylesTable styles = reader.getStylesTable();
+         XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+         while (sheets.hasNext()) {
+            try (InputStream sheet = sheets.next()) {
+               if (sheets.getSheetName().equals(sheetName)) {
+                  CellTypeFilter types = recordTypes ? new CellTypeFilter(styles) : null;
+                  RowCollector collector = new RowCollector(handler, types);
+                  parse(sheet, new XSSFSheetXMLHandler(styles, strings, collector, false), types);
+                  return;
+               }
+            }
+         }
+         throw new IOException("Sheet name '" + sheetName + "' does not exist in " + file);
+      } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+         throw new IOException("Error reading " + file + ": " + e.getMessage(), e);
+      } catch (RowHandlerException e) {
+         throw e.getCause();
+      }
+   }
+
+   /**
+    * Returns the names of the sheets in the file, in workbook order, without reading any sheet data.
+    */
+   public List<String> getSheetNames() throws IOException
+   {
+      List<String> sheetNames = new ArrayList<>();
+      try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+         XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) new XSSFReader(pkg).getSheetsData();
+         while (sheets.hasNext()) {
+            try (InputStream sheet = sheets.next()) {
+               sheetNames.add(sheets.getSheetName());
+            }
+         }
+      } catch (OpenXML4JException e) {
+         throw new IOException("Error reading " + file + ": " + e.getMessage(), e);
+      }
+      return sheetNames;
+   }
+
+   private static void parse(InputStream sheet, XSSFSheetXMLHandler handler, CellTypeFilter types)
+         throws IOException, SAXException, ParserConfigurationException
+   {
+      // POI's reader is namespace aware and has DTDs and external entities disabled
+      XMLReader xmlReader = XMLHelper.newXMLReader();
+      ContentHandler contentHandler = handler;
+      if (types != null) {
+         types.setContentHandler(handler);
+         contentHandler = types;
+      }
+      xmlReader.setContentHandler(contentHandler);
+      xmlReader.parse(new InputSource(sheet));
+   }
+
+   /**
+    * Receives the rows of a sheet as they are read.
+    */
+   @FunctionalInterface
+   public interface RowHandler
+   {
+      void row(SheetRow row) throws IOException;
+   }
+
+   /**
+    * The values of one row, indexed by 0-based column index, with null for empty cells.
+    */
+   public static class SheetRow
+   {
+      private final int rowNumber;
+      private final String[] values;
+      private final Object[] rawValues;
+      private final String[] numberFormats;
+
+      public SheetRow(int rowNumber, String[] values)
+      {
+         this(rowNumber, values, null, null);
+      }
+
+      public SheetRow(int rowNumber, String[] values, Object[] rawValues, String[] numberFormats)
+      {
+         this.rowNumber = rowNumber;
+         this.values = values;
+         this.rawValues = rawValues;
+         this.numberFormats = numberFormats;
+      }
+
+      /**
+       * Returns the 1-based row number.
+       */
+      public int getRowNumber()
+      {
+         return rowNumber;
+      }
+
+      public int getColumnCount()
+      {
+         return values.length;
+      }
+
+      /**
+       * Returns the value in the given 1-based column, or null if the cell is empty.
+       */
+      public String getValue(int columnNumber)
+      {
+         int index = columnNumber - 1;
+         return index < values.length ? values[index] : null;
+      }
+
+      /**
+       * Returns the raw value in the given 1-based column as a {@link Double} for a numeric cell or a
+       * {@link Boolean} for a boolean cell. Returns null for text and empty cells, and for every cell when cell
+       * types were not recorded.
+       */
+      public Object getRawValue(int columnNumber)
+      {
+         int index = columnNumber - 1;
+         return rawValues != null && index < rawValues.length ? rawValues[index] : null;
+      }
+
+      /**
+       * Returns the number format of the numeric cell in the given 1-based column, or null if there is none.
+       */
+      public String getNumberFormat(int columnNumber)
+      {
+         int index = columnNumber - 1;
+         return numberFormats != null && index < numberFormats.length ? numberFormats[index] : null;
+      }
+
+      @Override
+      public String toString()
+      {
+         return rowNumber + ": " + Arrays.toString(values);
+      }
+   }
+
+   private static class RowCollector implements SheetContentsHandler
+   {
+      private final RowHandler handler;
+      private final CellTypeFilter types;
+      private String[] values = new String[16];
+      private Object[] rawValues;
+      private String[] numberFormats;
+      private int columnCount = 0;
+
+      private RowCollector(RowHandler handler, CellTypeFilter types)
+      {
+         this.handler = handler;
+         this.types = types;
+         if (types != null) {
+            rawValues = new Object[values.length];
+            numberFormats = new String[values.length];
+         }
+      }
+
+      @Override
+      public void startRow(int rowNum)
+      {
+         Arrays.fill(values, 0, columnCount, null);
+         if (types != null) {
+            Arrays.fill(rawValues, 0, columnCount, null);
+            Arrays.fill(numberFormats, 0, columnCount, null);
+         }
+         columnCount = 0;
+      }
+
+      @Override
+      public void endRow(int rowNum)
+      {
+         if (columnCount == 0) {
+            return;
+         }
+         SheetRow row = types == null ? new SheetRow(rowNum + 1, Arrays.copyOf(values, columnCount))
+               : new SheetRow(rowNum + 1, Arrays.copyOf(values, columnCount), Arrays.copyOf(rawValues, columnCount),
+                     Arrays.copyOf(numberFormats, columnCount));
+         try {
+            handler.row(row);
+         } catch (IOException e) {
+            throw new RowHandlerException(e);
+         }
+      }
+
+      @Override
+      public void cell(String cellReference, String formattedValue, XSSFComment comment)
+      {
+         if (cellReference == null || formattedValue == null || formattedValue.isEmpty()) {
+            return;
+         }
+         int column = new CellReference(cellReference).getCol();
+         if (column >= values.length) {
+            values = Arrays.copyOf(values, Math.max(values.length * 2, column + 1));
+            if (types != null) {
+               rawValues = Arrays.copyOf(rawValues, values.length);
+               numberFormats = Arrays.copyOf(numberFormats, values.length);
+            }
+         }
+         values[column] = formattedValue;
+         if (types != null) {
+            rawValues[column] = types.getRawValue();
+            numberFormats[column] = rawValues[column] instanceof Double ? types.getNumberFormat() : null;
+         }
+         columnCount = Math.max(columnCount, column + 1);
+      }
+
+      @Override
+      public void headerFooter(String text, boolean isHeader, String tagName)
+      {
+         // NO-OP
+      }
+   }
+
+   /**
+    * Sits in front of POI's sheet handler and notes the type, style and raw value of the cell being parsed. The
+    * sheet handler reports a cell when its value element ends, and the filter records the value before passing
+    * that event on, so {@link RowCollector} can read it from the <tt>cell</tt> callback.
+    */
+   private static class CellTypeFilter extends XMLFilterImpl
+   {
+      private final StylesTable styles;
+      private final StringBuilder value = new StringBuilder();
+      private String cellType;
+      private String styleIndex;
+      private boolean inValue;
+
+      private CellTypeFilter(StylesTable styles)
+      {
+         this.styles = styles;
+      }
+
+      @Override
+      public void startElement(String uri, String localName, String qName, Attributes attributes)
+            throws SAXException
+      {
+         if ("c".equals(localName)) {
+            cellType = attributes.getValue("t");
+            styleIndex = attributes.getValue("s");
+            value.setLength(0);
+         } else if ("v".equals(localName)) {
+            inValue = true;
+         }
+         super.startElement(uri, localName, qName, attributes);
+      }
+
+      @Override
+      public void characters(char[] ch, int start, int length) throws SAXException
+      {
+         if (inValue) {
+            value.append(ch, start, length);
+         }
+         super.characters(ch, start, length);
+      }
+
+      @Override
+      public void endElement(String uri, String localName, String qName) throws SAXException
+      {
+         if ("v".equals(localName)) {
+            inValue = false;
+         }
+         super.endElement(uri, localName, qName);
+      }
+
+      private Object getRawValue()
+      {
+         if ("b".equals(cellType)) {
+            return value.length() > 0 && value.charAt(0) != '0';
+         }
+         if ((cellType == null || "n".equals(cellType)) && value.length() > 0) {
+            try {
+               return Double.parseDouble(value.toString());
+            } catch (NumberFormatException e) {
+               return null;
+            }
+         }
+         return null;
+      }
+
+      private String getNumberFormat()
+      {
+         if (styles == null) {
+            return null;
+         }
+         XSSFCellStyle style = styles.getStyleAt(styleIndex == null ? 0 : Integer.parseInt(styleIndex));
+         return style == null ? null : style.getDataFormatString();
+      }
+   }
+
+   /**
+    * Carries a handler's I/O error out through the SAX parser.
+    */
+   private static class RowHandlerException extends RuntimeException
+   {
+      private static final long serialVersionUID = 1L;
+
+      private RowHandlerException(IOException cause)
+      {
+         super(cause);
+      }
+
+      @Override
+      public synchronized IOException getCause()
+      {
+         return (IOException) super.getCause();
+      }
+   }
+}
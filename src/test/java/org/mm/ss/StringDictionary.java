@@ -0,0 +1,68 @@
+package org.mm.ss;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns cell text into dense integer codes, starting at 1, so that a column can be stored as an <tt>int[]</tt>
+ * and every occurrence of a repeated value shares one string. Code 0 is never assigned and stands for an empty
+ * cell in columnar storage.
+ */
+public class StringDictionary
+{
+   private final Map<String, Integer> codes = new HashMap<>();
+   private final List<String> values = new ArrayList<>();
+
+   /**
+    * Returns the code of the given value, assigning the next code if the value has not been seen before.
+    */
+   public int encode(String value)
+   {
+      Integer code = codes.get(value);
+      if (code == null) {
+         values.add(value);
+         code = values.size();
+         codes.put(value, code);
+      }
+      return code;
+   }
+
+   /**
+    * Returns the code of the given value, or 0 if the value is not in the dictionary.
+    */
+   public int lookup(String value)
+   {
+      Integer code = codes.get(value);
+      return code == null ? 0 : code;
+   }
+
+   public String decode(int code)
+   {
+      if (code < 1 || code > values.size()) {
+         throw new IllegalArgumentException("Unknown dictionary code " + code);
+      }
+      return values.get(code - 1);
+   }
+
+   public int size()
+   {
+      return values.size();
+   }
+
+   /**
+    * Returns a rough count of the heap bytes held by the dictionary: each string with its character data and
+    * its hash map entry.
+    */
+   public long getEstimatedMemoryBytes()
+   {
+      long bytes = 0;
+      for (String value : values) {
+         bytes += 40 + 2L * value.length() // String and its character array
+               + 48 // Hash map entry and boxed code
+               + 4; // List slot
+      }
+      return bytes;
+   }
+}
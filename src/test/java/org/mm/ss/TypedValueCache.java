@@ -0,0 +1,176 @@
+package org.mm.ss;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * Cell values converted to XSD datatypes, each cell parsed at most once per datatype however many expressions or
+ * rows read it. Entries are keyed by the packed {@link CellAddress} of the cell, held unboxed so a lookup does not
+ * allocate, one table per datatype, and stay valid until {@link #invalidate} is called for a cell whose content
+ * has changed.
+ * <p>
+ * Invalid lexical forms are cached too, so a cell that is not a valid number fails fast on every later read.
+ */
+public class TypedValueCache
+{
+   private static final Object EMPTY = new Object();
+
+   private final LongFunction<String> values;
+   private final List<String> sheetNames;
+   private final LongKeyTable<Object>[] tables;
+
+   private final AtomicLong hitCount = new AtomicLong();
+   private final AtomicLong parseCount = new AtomicLong();
+
+   /**
+    * Creates a cache over the cells of a columnar snapshot.
+    */
+   public TypedValueCache(ColumnarWorkbook workbook)
+   {
+      this(workbook::getValue, workbook.getSheetNames());
+   }
+
+   /**
+    * Creates a cache over any source of cell text by packed address. The sheet names are used in error messages.
+    */
+   @SuppressWarnings("unchecked")
+   public TypedValueCache(LongFunction<String> values, List<String> sheetNames)
+   {
+      this.values = values;
+      this.sheetNames = sheetNames;
+      this.tables = new LongKeyTable[XsdDatatype.values().length];
+      for (int i = 0; i < tables.length; i++) {
+         tables[i] = new LongKeyTable<>();
+      }
+   }
+
+   /**
+    * Returns the cell value converted to the datatype, or null if the cell is empty. See
+    * {@link XsdDatatype#parse} for the types returned.
+    *
+    * @throws IllegalArgumentException
+    *            If the cell text is not a valid lexical form of the datatype
+    */
+   public Object getValue(long address, XsdDatatype datatype)
+   {
+      LongKeyTable<Object> table = tables[datatype.ordinal()];
+      Object value = table.get(address);
+      if (value == null) {
+         value = convert(address, datatype);
+         table.put(address, value);
+      } else {
+         hitCount.incrementAndGet();
+      }
+      if (value == EMPTY) {
+         return null;
+      }
+      if (value instanceof InvalidValue) {
+         throw new IllegalArgumentException(((InvalidValue) value).message);
+      }
+      return value;
+   }
+
+   public double getDouble(long address)
+   {
+      return ((Number) getRequiredValue(address, XsdDatatype.DOUBLE)).doubleValue();
+   }
+
+   public float getFloat(long address)
+   {
+      return ((Number) getRequiredValue(address, XsdDatatype.FLOAT)).floatValue();
+   }
+
+   public long getLong(long address)
+   {
+      return ((Number) getRequiredValue(address, XsdDatatype.LONG)).longValue();
+   }
+
+   public int getInt(long address)
+   {
+      return ((Number) getRequiredValue(address, XsdDatatype.INT)).intValue();
+   }
+
+   public boolean getBoolean(long address)
+   {
+      return (Boolean) getRequiredValue(address, XsdDatatype.BOOLEAN);
+   }
+
+   /**
+    * Drops every converted value of the cell, so it is parsed again from its new content on next read.
+    */
+   public void invalidate(long address)
+   {
+      for (LongKeyTable<Object> table : tables) {
+         table.remove(address);
+      }
+   }
+
+   public void invalidateAll()
+   {
+      for (LongKeyTable<Object> table : tables) {
+         table.clear();
+      }
+   }
+
+   public int size()
+   {
+      int size = 0;
+      for (LongKeyTable<Object> table : tables) {
+         size += table.size();
+      }
+      return size;
+   }
+
+   public long getHitCount()
+   {
+      return hitCount.get();
+   }
+
+   public long getParseCount()
+   {
+      return parseCount.get();
+   }
+
+   @Override
+   public String toString()
+   {
+      return String.format("TypedValueCache[size=%d, parses=%d, hits=%d]", size(), getParseCount(), getHitCount());
+   }
+
+   private Object getRequiredValue(long address, XsdDatatype datatype)
+   {
+      Object value = getValue(address, datatype);
+      if (value == null) {
+         throw new IllegalArgumentException(
+               "Empty cell at " + CellAddress.toString(address, sheetNames) + " has no " + datatype.getName() + " value");
+      }
+      return value;
+   }
+
+   private Object convert(long address, XsdDatatype datatype)
+   {
+      String text = values.apply(address);
+      if (text == null || text.isEmpty()) {
+         return EMPTY;
+      }
+      parseCount.incrementAndGet();
+      try {
+         return datatype.parse(text);
+      } catch (IllegalArgumentException e) {
+         return new InvalidValue(
+               "Value '" + text + "' at " + CellAddress.toString(address, sheetNames) + " is not a valid "
+                     + datatype.getName());
+      }
+   }
+
+   private static class InvalidValue
+   {
+      private final String message;
+
+      private InvalidValue(String message)
+      {
+         this.message = message;
+      }
+   }
+}
@@ -0,0 +1,91 @@
+package org.mm.ss;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class TypedValueCacheTest
+{
+   private static final long A1 = CellAddress.pack(0, 1, 1);
+   private static final long B1 = CellAddress.pack(0, 2, 1);
+   private static final long C1 = CellAddress.pack(0, 3, 1);
+
+   @Rule
+   public final ExpectedException thrown = ExpectedException.none();
+
+   private final Map<Long, String> cells = new HashMap<>();
+   private final TypedValueCache cache = new TypedValueCache(cells::get, Arrays.asList("Sheet1"));
+
+   @Test
+   public void TestParsedOncePerDatatype()
+   {
+      cells.put(A1, "42");
+
+      assertThat(cache.getDouble(A1), is(42.0));
+      assertThat(cache.getDouble(A1), is(42.0));
+      assertThat(cache.getLong(A1), is(42L));
+      assertThat(cache.getParseCount(), is(2L));
+      assertThat(cache.getHitCount(), is(1L));
+   }
+
+   @Test
+   public void TestInvalidateAfterChange()
+   {
+      cells.put(A1, "true");
+      assertThat(cache.getBoolean(A1), is(true));
+
+      cells.put(A1, "0");
+      assertThat(cache.getBoolean(A1), is(true)); // Still the cached value
+      cache.invalidate(A1);
+      assertThat(cache.getBoolean(A1), is(false));
+   }
+
+   @Test
+   public void TestDatesAndEmptyCells()
+   {
+      cells.put(A1, "2016-02-29");
+      cells.put(B1, "2016-02-29T10:15:00+01:00");
+
+      assertThat(cache.getValue(A1, XsdDatatype.DATE), is(LocalDate.of(2016, 2, 29)));
+      assertThat(cache.getValue(B1, XsdDatatype.DATE_TIME), is(OffsetDateTime.parse("2016-02-29T10:15:00+01:00")));
+      assertThat(cache.getValue(C1, XsdDatatype.DATE), is(nullValue()));
+   }
+
+   @Test
+   public void TestDateOffsetKept()
+   {
+      cells.put(A1, "2016-02-29+01:00");
+
+      assertThat(cache.getValue(A1, XsdDatatype.DATE), is(OffsetDateTime.parse("2016-02-29T00:00:00+01:00")));
+   }
+
+   @Test
+   public void TestJavaOnlyDoubleFormRejected()
+   {
+      cells.put(A1, "0x1p3");
+
+      thrown.expect(IllegalArgumentException.class);
+      thrown.expectMessage("Value '0x1p3' at Sheet1!A1 is not a valid xsd:double");
+      cache.getDouble(A1);
+   }
+
+   @Test
+   public void TestInvalidValue()
+   {
+      cells.put(A1, "abc");
+
+      thrown.expect(IllegalArgumentException.class);
+      thrown.expectMessage("Value 'abc' at Sheet1!A1 is not a valid xsd:int");
+      cache.getInt(A1);
+   }
+}
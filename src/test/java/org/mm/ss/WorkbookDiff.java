@@ -0,0 +1,249 @@
+package org.mm.ss;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * The cells whose text differs between two versions of a workbook, and the rows of a rendered range that those
+ * changes can affect for a given expression.
+ * <p>
+ * A change affects a row when a reference of the expression, resolved at that row, can read the changed cell:
+ * <ul>
+ * <li>a row-wildcard reference to the changed column affects the changed row;</li>
+ * <li>with <tt>mm:ShiftUp</tt> it also affects the rows below, down to the next non-empty cell of the column,
+ * and with <tt>mm:ShiftDown</tt> the rows above, up to the previous non-empty cell, taking the wider extent of
+ * the two versions;</li>
+ * <li>a reference to a fixed row that is the changed row, or that shifts vertically, affects every row; and</li>
+ * <li>horizontal shifts are taken to reach any column of the row.</li>
+ * </ul>
+ * The diff compares every cell of the two snapshots, so callers that render a fixed set of expressions should
+ * snapshot only the cells those expressions can read, as given by {@link #getReadColumns}.
+ */
+public class WorkbookDiff
+{
+   private final ColumnarWorkbook before;
+   private final ColumnarWorkbook after;
+   private final List<ChangedCell> changes;
+
+   private WorkbookDiff(ColumnarWorkbook before, ColumnarWorkbook after, List<ChangedCell> changes)
+   {
+      this.before = before;
+      this.after = after;
+      this.changes = Collections.unmodifiableList(changes);
+   }
+
+   public static WorkbookDiff of(ColumnarWorkbook before, ColumnarWorkbook after)
+   {
+      Set<String> sheetNames = new LinkedHashSet<>(before.getSheetNames());
+      sheetNames.addAll(after.getSheetNames());
+      List<ChangedCell> changes = new ArrayList<>();
+      for (String sheetName : sheetNames) {
+         Optional<ColumnarSheet> beforeSheet = before.getSheet(sheetName);
+         Optional<ColumnarSheet> afterSheet = after.getSheet(sheetName);
+         int columnCount = Math.max(getColumnCount(beforeSheet), getColumnCount(afterSheet));
+         int rowCount = Math.max(getRowCount(beforeSheet), getRowCount(afterSheet));
+         for (int columnNumber = 1; columnNumber <= columnCount; columnNumber++) {
+            for (int rowNumber = 1; rowNumber <= rowCount; rowNumber++) {
+               String beforeValue = getValue(beforeSheet, columnNumber, rowNumber);
+               String afterValue = getValue(afterSheet, columnNumber, rowNumber);
+               if (!Objects.equals(beforeValue, afterValue)) {
+                  changes.add(new ChangedCell(sheetName, columnNumber, rowNumber));
+               }
+            }
+         }
+      }
+      return new WorkbookDiff(before, after, changes);
+   }
+
+   /**
+    * Returns the columns the expressions with the given footprints can read when rendered over the range, keyed
+    * by sheet name, in the form taken by {@link ColumnarWorkbook#of(org.apache.poi.ss.usermodel.Workbook, Map)}.
+    * Wildcard columns resolve to the columns of the range. A sheet read with a horizontal shift maps to null, as
+    * the shift can reach any of its columns.
+    */
+   public static Map<String, BitSet> getReadColumns(Collection<ReferenceFootprint> footprints, SheetRange range)
+   {
+      Map<String, BitSet> columnsBySheet = new LinkedHashMap<>();
+      Set<String> wholeSheets = new HashSet<>();
+      for (ReferenceFootprint footprint : footprints) {
+         for (ReferenceFootprint.Reference reference : footprint.getReferences()) {
+            String sheetName = reference.resolveSheetName(range.getSheetName());
+            BitSet columns = columnsBySheet.computeIfAbsent(sheetName, name -> new BitSet());
+            Optional<ShiftDirection> shift = reference.getShiftDirection();
+            if (shift.isPresent() && !shift.get().isVertical()) {
+               wholeSheets.add(sheetName);
+            } else if (reference.isColumnWildcard()) {
+               columns.set(range.getStartColumnNumber(), range.getEndColumnNumber() + 1);
+            } else {
+               columns.set(reference.getColumnNumber());
+            }
+         }
+      }
+      for (String sheetName : wholeSheets) {
+         columnsBySheet.put(sheetName, null);
+      }
+      return columnsBySheet;
+   }
+
+   public List<ChangedCell> getChanges()
+   {
+      return changes;
+   }
+
+   public boolean isEmpty()
+   {
+      return changes.isEmpty();
+   }
+
+   /**
+    * Returns the numbers of the rows in the range whose rendering of the expression with the given footprint can
+    * differ between the two versions, as set bits indexed by row number.
+    */
+   public BitSet getAffectedRows(ReferenceFootprint footprint, SheetRange range)
+   {
+      BitSet rows = new BitSet();
+      int firstRow = range.getStartRowNumber();
+      int lastRow = range.getEndRowNumber();
+      for (ChangedCell change : changes) {
+         for (ReferenceFootprint.Reference reference : footprint.getReferences()) {
+            if (!reference.resolveSheetName(range.getSheetName()).equals(change.getSheetName())
+                  || !readsColumn(reference, range, change.getColumnNumber())) {
+               continue;
+            }
+            ShiftDirection shift = reference.getShiftDirection().orElse(null);
+            boolean verticalShift = shift != null && shift.isVertical();
+            if (!reference.isRowWildcard()) {
+               if (reference.getRowNumber() == change.getRowNumber() || verticalShift) {
+                  rows.set(firstRow, lastRow + 1);
+                  return rows; // Every row is affected
+               }
+            } else if (shift == ShiftDirection.UP) {
+               int end = getShiftUpExtent(change, lastRow);
+               setRows(rows, change.getRowNumber(), end, firstRow, lastRow);
+            } else if (shift == ShiftDirection.DOWN) {
+               int start = getShiftDownExtent(change);
+               setRows(rows, start, change.getRowNumber(), firstRow, lastRow);
+            } else {
+               setRows(rows, change.getRowNumber(), change.getRowNumber(), firstRow, lastRow);
+            }
+         }
+      }
+      return rows;
+   }
+
+   private static boolean readsColumn(ReferenceFootprint.Reference reference, SheetRange range, int columnNumber)
+   {
+      Optional<ShiftDirection> shift = reference.getShiftDirection();
+      if (shift.isPresent() && !shift.get().isVertical()) {
+         return true;
+      }
+      if (reference.isColumnWildcard()) {
+         return columnNumber >= range.getStartColumnNumber() && columnNumber <= range.getEndColumnNumber();
+      }
+      return reference.getColumnNumber() == columnNumber;
+   }
+
+   /**
+    * Returns the last row whose shift up can reach the changed cell: the row before the next non-empty cell
+    * below it in either version, or the given last row if there is none.
+    */
+   private int getShiftUpExtent(ChangedCell change, int lastRow)
+   {
+      int extent = change.getRowNumber();
+      for (ColumnarWorkbook version : new ColumnarWorkbook[] { before, after }) {
+         Optional<ColumnarSheet> sheet = version.getSheet(change.getSheetName());
+         int next = sheet.isPresent()
+               ? sheet.get().getNonEmptyIndex().findRowDown(change.getColumnNumber(), change.getRowNumber() + 1) : 0;
+         extent = Math.max(extent, next == 0 ? lastRow : next - 1);
+      }
+      return extent;
+   }
+
+   /**
+    * Returns the first row whose shift down can reach the changed cell: the row after the previous non-empty
+    * cell above it in either version, or row 1 if there is none.
+    */
+   private int getShiftDownExtent(ChangedCell change)
+   {
+      int extent = change.getRowNumber();
+      for (ColumnarWorkbook version : new ColumnarWorkbook[] { before, after }) {
+         Optional<ColumnarSheet> sheet = version.getSheet(change.getSheetName());
+         int previous = sheet.isPresent()
+               ? sheet.get().getNonEmptyIndex().findRowUp(change.getColumnNumber(), change.getRowNumber() - 1) : 0;
+         extent = Math.min(extent, previous + 1);
+      }
+      return extent;
+   }
+
+   private static void setRows(BitSet rows, int start, int end, int firstRow, int lastRow)
+   {
+      int from = Math.max(start, firstRow);
+      int to = Math.min(end, lastRow);
+      if (from <= to) {
+         rows.set(from, to + 1);
+      }
+   }
+
+   private static int getColumnCount(Optional<ColumnarSheet> sheet)
+   {
+      return sheet.isPresent() ? sheet.get().getColumnCount() : 0;
+   }
+
+   private static int getRowCount(Optional<ColumnarSheet> sheet)
+   {
+      return sheet.isPresent() ? sheet.get().getRowCount() : 0;
+   }
+
+   private static String getValue(Optional<ColumnarSheet> sheet, int columnNumber, int rowNumber)
+   {
+      return sheet.isPresent() ? sheet.get().getValue(columnNumber, rowNumber) : null;
+   }
+
+   /**
+    * A cell whose text differs between the two versions, including cells added or cleared.
+    */
+   public static class ChangedCell
+   {
+      private final String sheetName;
+      private final int columnNumber;
+      private final int rowNumber;
+
+      private ChangedCell(String sheetName, int columnNumber, int rowNumber)
+      {
+         this.sheetName = sheetName;
+         this.columnNumber = columnNumber;
+         this.rowNumber = rowNumber;
+      }
+
+      public String getSheetName()
+      {
+         return sheetName;
+      }
+
+      public int getColumnNumber()
+      {
+         return columnNumber;
+      }
+
+      public int getRowNumber()
+      {
+         return rowNumber;
+      }
+
+      @Override
+      public String toString()
+      {
+         return sheetName + "!" + ReferenceFootprint.columnName(columnNumber) + rowNumber;
+      }
+   }
+}
@@ -0,0 +1,557 @@
+package org.mm.ss;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+/**
+ * A workbook stored in a compact binary file that is memory-mapped rather than parsed, so opening it takes
+ * milliseconds however large the original XLSX file was. The file holds the columnar form of the workbook
+ * ({@link ColumnarWorkbook}): a string dictionary, a sheet index, and per-column blocks of dictionary codes and
+ * numbers. Cells are read straight from the mapping, and dictionary strings are decoded on first use.
+ * <p>
+ * The snapshot records the length, modification time and CRC-32 of the XLSX file it was built from.
+ * {@link #open(File, File)} checks that link and rebuilds the snapshot when the source has changed or the snapshot
+ * is missing or unreadable. A source whose length and modification time both match is taken as unchanged without
+ * reading it; the CRC-32 is only computed when the modification time differs, or is too close to the snapshot's
+ * own to tell a later edit apart. Snapshots are limited to 2 GB, the most a single mapping can address, and
+ * {@link #write} refuses a workbook that would exceed that before writing anything.
+ * <p>
+ * Cells read as their displayed text. Numbers shown through a format, such as dates, and booleans also keep
+ * their value, and numbers their format string, in a per-sheet table of typed cells, so {@link #toWorkbook()}
+ * rebuilds them with their original type and format.
+ * <p>
+ * Layout, big-endian:
+ * <pre>
+ * header      magic "MMWS", version, source length, source modification time, source CRC-32, string count,
+ *             sheet count, dictionary offset, sheet index offset
+ * dictionary  (string count + 1) int end offsets, then UTF-8 bytes
+ * sheet index per sheet: name, row count, column count, cell count, offset and length of its typed cell
+ *             block, then per column the offset and length of its code block and its number block
+ * blocks      int codes and double numbers for every column, then each sheet's typed cells as int row,
+ *             int column, int format code and double value
+ * </pre>
+ */
+public class WorkbookSnapshot
+{
+   private static final int MAGIC = 0x4D4D5753; // "MMWS"
+   private static final int VERSION = 3;
+   private static final int HEADER_BYTES = 56;
+   private static final int LAST_MODIFIED_OFFSET = 16;
+   private static final int SHEET_ENTRY_BYTES = 28;
+   private static final int COLUMN_ENTRY_BYTES = 24;
+   private static final int TYPED_CELL_BYTES = 20;
+   private static final String GENERAL_FORMAT = "General";
+
+   private final File file;
+   private final MappedByteBuffer buffer;
+   private final long sourceLength;
+   private final long sourceLastModified;
+   private final long sourceChecksum;
+   private final int stringCount;
+   private final int dictionaryOffset;
+   private final int stringDataOffset;
+   private final String[] strings;
+   private final List<String> sheetNames;
+   private final SheetEntry[] sheets;
+
+   private WorkbookSnapshot(File file, MappedByteBuffer buffer) throws IOException
+   {
+      this.file = file;
+      this.buffer = buffer;
+      if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+         throw new IOException("Not a workbook snapshot");
+      }
+      if (buffer.getInt(4) != VERSION) {
+         throw new IOException("Unsupported workbook snapshot version " + buffer.getInt(4));
+      }
+      this.sourceLength = buffer.getLong(8);
+      this.sourceLastModified = buffer.getLong(LAST_MODIFIED_OFFSET);
+      this.sourceChecksum = buffer.getLong(24);
+      this.stringCount = buffer.getInt(32);
+      int sheetCount = buffer.getInt(36);
+      this.dictionaryOffset = (int) buffer.getLong(40);
+      this.stringDataOffset = dictionaryOffset + 4 * (stringCount + 1);
+      this.strings = new String[stringCount + 1];
+
+      List<String> names = new ArrayList<>(sheetCount);
+      this.sheets = new SheetEntry[sheetCount];
+      int position = (int) buffer.getLong(48);
+      for (int i = 0; i < sheetCount; i++) {
+         byte[] name = new byte[buffer.getShort(position)];
+         position += 2;
+         for (int j = 0; j < name.length; j++) {
+            name[j] = buffer.get(position + j);
+         }
+         position += name.length;
+         SheetEntry sheet = new SheetEntry(new String(name, StandardCharsets.UTF_8), buffer.getInt(position),
+               buffer.getInt(position + 4), buffer.getLong(position + 8), (int) buffer.getLong(position + 16),
+               buffer.getInt(position + 24), position + SHEET_ENTRY_BYTES);
+         position = sheet.columnsOffset + COLUMN_ENTRY_BYTES * sheet.columnCount;
+         sheets[i] = sheet;
+         names.add(sheet.name);
+      }
+      this.sheetNames = Collections.unmodifiableList(names);
+   }
+
+   /**
+    * Opens the snapshot of the given XLSX file, first building it if it is missing, unreadable or was built from
+    * a different version of the file.
+    */
+   public static WorkbookSnapshot open(File source, File snapshotFile) throws IOException
+   {
+      long length = source.length();
+      long lastModified = source.lastModified();
+      if (snapshotFile.exists()) {
+         try {
+            WorkbookSnapshot snapshot = map(snapshotFile);
+            if (snapshot.isCurrent(source)) {
+               if (snapshot.sourceLastModified != lastModified) {
+                  setSourceLastModified(snapshotFile, lastModified); // Touched but unchanged; skip the CRC next time
+               }
+               return snapshot;
+            }
+         } catch (IOException | RuntimeException e) {
+            // Unreadable snapshot; rebuild it below
+         }
+      }
+      write(read(source), length, lastModified, checksum(source), snapshotFile);
+      return map(snapshotFile);
+   }
+
+   /**
+    * Maps an existing snapshot file without checking it against its source.
+    */
+   public static WorkbookSnapshot map(File snapshotFile) throws IOException
+   {
+      try (RandomAccessFile raf = new RandomAccessFile(snapshotFile, "r"); FileChannel channel = raf.getChannel()) {
+         if (channel.size() > Integer.MAX_VALUE) {
+            throw new IOException("Workbook snapshot " + snapshotFile + " is too large to map");
+         }
+         return new WorkbookSnapshot(snapshotFile, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+      }
+   }
+
+   /**
+    * Reads every sheet of an XLSX file into columnar form with the streaming reader. Values are held as the
+    * formatted text of each cell, with typed cells recorded for formatted numbers and booleans.
+    */
+   public static ColumnarWorkbook read(File source) throws IOException
+   {
+      StreamingSheetReader reader = new StreamingSheetReader(source, true);
+      StringDictionary dictionary = new StringDictionary();
+      Map<String, ColumnarSheet> sheets = new LinkedHashMap<>();
+      for (String sheetName : reader.getSheetNames()) {
+         sheets.put(sheetName, ColumnarSheet.read(reader, sheetName, dictionary));
+      }
+      return new ColumnarWorkbook(dictionary, sheets);
+   }
+
+   /**
+    * Writes a columnar workbook as a snapshot, linked to a source file of the given length, modification time and
+    * checksum. The file is written under a temporary name and then moved into place, so readers never see a
+    * partial file; the temporary file is removed if the write fails.
+    *
+    * @throws IOException
+    *            If the snapshot would be larger than the 2 GB that can be mapped, or cannot be written
+    */
+   public static void write(ColumnarWorkbook workbook, long sourceLength, long sourceLastModified,
+         long sourceChecksum, File snapshotFile) throws IOException
+   {
+      StringDictionary dictionary = workbook.getDictionary();
+      byte[][] strings = new byte[dictionary.size()][];
+      long stringBytes = 0;
+      for (int code = 1; code <= strings.length; code++) {
+         strings[code - 1] = dictionary.decode(code).getBytes(StandardCharsets.UTF_8);
+         stringBytes += strings[code - 1].length;
+      }
+      List<ColumnarSheet> sheets = new ArrayList<>(workbook.getSheets().values());
+      byte[][] names = new byte[sheets.size()][];
+      long indexBytes = 0;
+      for (int i = 0; i < names.length; i++) {
+         names[i] = sheets.get(i).getSheetName().getBytes(StandardCharsets.UTF_8);
+         indexBytes += 2 + names[i].length + SHEET_ENTRY_BYTES
+               + (long) COLUMN_ENTRY_BYTES * sheets.get(i).getColumnCount();
+      }
+      long dictionaryOffset = HEADER_BYTES;
+      long indexOffset = dictionaryOffset + 4L * (strings.length + 1) + stringBytes;
+      long blockOffset = indexOffset + indexBytes;
+      long totalBytes = blockOffset;
+      for (ColumnarSheet sheet : sheets) {
+         for (int columnNumber = 1; columnNumber <= sheet.getColumnCount(); columnNumber++) {
+            totalBytes += 4L * sheet.getColumnCodes(columnNumber).length
+                  + 8L * sheet.getColumnNumbers(columnNumber).length;
+         }
+         totalBytes += (long) TYPED_CELL_BYTES * sheet.getTypedCells().size();
+      }
+      if (totalBytes > Integer.MAX_VALUE) {
+         throw new IOException("Workbook snapshot " + snapshotFile + " would be " + totalBytes
+               + " bytes, more than the " + Integer.MAX_VALUE + " that can be mapped");
+      }
+
+      File temporary = new File(snapshotFile.getPath() + ".tmp");
+      boolean moved = false;
+      try {
+         writeBlocks(temporary, sourceLength, sourceLastModified, sourceChecksum, strings, sheets, names,
+               dictionaryOffset, indexOffset, blockOffset);
+         Files.move(temporary.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+               StandardCopyOption.ATOMIC_MOVE);
+         moved = true;
+      } finally {
+         if (!moved) {
+            temporary.delete();
+         }
+      }
+   }
+
+   private static void writeBlocks(File file, long sourceLength, long sourceLastModified, long sourceChecksum,
+         byte[][] strings, List<ColumnarSheet> sheets, byte[][] names, long dictionaryOffset, long indexOffset,
+         long blockOffset) throws IOException
+   {
+      try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+         out.writeInt(MAGIC);
+         out.writeInt(VERSION);
+         out.writeLong(sourceLength);
+         out.writeLong(sourceLastModified);
+         out.writeLong(sourceChecksum);
+         out.writeInt(strings.length);
+         out.writeInt(sheets.size());
+         out.writeLong(dictionaryOffset);
+         out.writeLong(indexOffset);
+
+         int end = 0;
+         out.writeInt(end);
+         for (byte[] string : strings) {
+            end += string.length;
+            out.writeInt(end);
+         }
+         for (byte[] string : strings) {
+            out.write(string);
+         }
+
+         long offset = blockOffset;
+         for (int i = 0; i < sheets.size(); i++) {
+            ColumnarSheet sheet = sheets.get(i);
+            long typedOffset = offset;
+            for (int columnNumber = 1; columnNumber <= sheet.getColumnCount(); columnNumber++) {
+               typedOffset += 4L * sheet.getColumnCodes(columnNumber).length
+                     + 8L * sheet.getColumnNumbers(columnNumber).length;
+            }
+            out.writeShort(names[i].length);
+            out.write(names[i]);
+            out.writeInt(sheet.getRowCount());
+            out.writeInt(sheet.getColumnCount());
+            out.writeLong(sheet.getCellCount());
+            out.writeLong(typedOffset);
+            out.writeInt(sheet.getTypedCells().size());
+            for (int columnNumber = 1; columnNumber <= sheet.getColumnCount(); columnNumber++) {
+               int codeCount = sheet.getColumnCodes(columnNumber).length;
+               int numberCount = sheet.getColumnNumbers(columnNumber).length;
+               out.writeLong(offset);
+               out.writeInt(codeCount);
+               out.writeLong(offset + 4L * codeCount);
+               out.writeInt(numberCount);
+               offset += 4L * codeCount + 8L * numberCount;
+            }
+            offset += (long) TYPED_CELL_BYTES * sheet.getTypedCells().size();
+         }
+
+         for (ColumnarSheet sheet : sheets) {
+            for (int columnNumber = 1; columnNumber <= sheet.getColumnCount(); columnNumber++) {
+               for (int code : sheet.getColumnCodes(columnNumber)) {
+                  out.writeInt(code);
+               }
+               for (double number : sheet.getColumnNumbers(columnNumber)) {
+                  out.writeDouble(number);
+               }
+            }
+            ColumnarSheet.TypedCells typedCells = sheet.getTypedCells();
+            for (int i = 0; i < typedCells.size(); i++) {
+               out.writeInt(typedCells.getRowNumber(i));
+               out.writeInt(typedCells.getColumnNumber(i));
+               out.writeInt(typedCells.getFormatCode(i));
+               out.writeDouble(typedCells.getValue(i));
+            }
+         }
+      }
+   }
+
+   private static void setSourceLastModified(File snapshotFile, long lastModified) throws IOException
+   {
+      try (RandomAccessFile raf = new RandomAccessFile(snapshotFile, "rw")) {
+         raf.seek(LAST_MODIFIED_OFFSET);
+         raf.writeLong(lastModified);
+      }
+   }
+
+   /**
+    * Returns the CRC-32 of a file's contents.
+    */
+   public static long checksum(File file) throws IOException
+   {
+      CRC32 crc = new CRC32();
+      byte[] block = new byte[1 << 16];
+      try (InputStream in = new FileInputStream(file)) {
+         int read;
+         while ((read = in.read(block)) > 0) {
+            crc.update(block, 0, read);
+         }
+      }
+      return crc.getValue();
+   }
+
+   /**
+    * Returns true if the snapshot was built from the current contents of the given file. The file is only read
+    * when its length matches but its modification time does not.
+    */
+   public boolean isCurrent(File source) throws IOException
+   {
+      if (sourceLength != source.length()) {
+         return false;
+      }
+      // A matching time is only trusted when older than the snapshot itself, since an edit made within the same
+      // clock tick as the snapshot was written would leave it unchanged
+      long lastModified = source.lastModified();
+      if (lastModified == sourceLastModified && lastModified != 0 && lastModified < file.lastModified()) {
+         return true;
+      }
+      return sourceChecksum == checksum(source);
+   }
+
+   public List<String> getSheetNames()
+   {
+      return sheetNames;
+   }
+
+   /**
+    * Returns the text of the cell at the given location, or null if the cell is empty.
+    *
+    * @throws IllegalArgumentException
+    *            If the location names a sheet that is not in the snapshot
+    */
+   public String getValue(SpreadsheetLocation location)
+   {
+      int sheetIndex = sheetNames.indexOf(location.getSheetName());
+      if (sheetIndex < 0) {
+         throw new IllegalArgumentException("Sheet name '" + location.getSheetName() + "' does not exist");
+      }
+      return getValue(sheetIndex, location.getPhysicalColumnNumber(), location.getPhysicalRowNumber());
+   }
+
+   /**
+    * Returns the text of the cell at the given packed {@link CellAddress}, or null if the cell is empty.
+    */
+   public String getValue(long address)
+   {
+      return getValue(CellAddress.getSheetIndex(address), CellAddress.getColumnNumber(address),
+            CellAddress.getRowNumber(address));
+   }
+
+   /**
+    * Copies the snapshot into a heap-resident {@link ColumnarWorkbook}.
+    */
+   public ColumnarWorkbook toColumnarWorkbook()
+   {
+      StringDictionary dictionary = new StringDictionary();
+      for (int code = 1; code <= stringCount; code++) {
+         dictionary.encode(getString(code)); // Codes are assigned in the same order
+      }
+      Map<String, ColumnarSheet> columnarSheets = new LinkedHashMap<>();
+      for (SheetEntry sheet : sheets) {
+         int[][] columns = new int[sheet.columnCount][];
+         double[][] numbers = new double[sheet.columnCount][];
+         for (int i = 0; i < sheet.columnCount; i++) {
+            int entry = sheet.columnsOffset + COLUMN_ENTRY_BYTES * i;
+            int codesOffset = (int) buffer.getLong(entry);
+            columns[i] = new int[buffer.getInt(entry + 8)];
+            for (int j = 0; j < columns[i].length; j++) {
+               columns[i][j] = buffer.getInt(codesOffset + 4 * j);
+            }
+            int numbersOffset = (int) buffer.getLong(entry + 12);
+            numbers[i] = new double[buffer.getInt(entry + 20)];
+            for (int j = 0; j < numbers[i].length; j++) {
+               numbers[i][j] = buffer.getDouble(numbersOffset + 8 * j);
+            }
+         }
+         columnarSheets.put(sheet.name, ColumnarSheet.of(sheet.name, dictionary, sheet.rowCount, columns, numbers,
+               sheet.cellCount, readTypedCells(sheet)));
+      }
+      return new ColumnarWorkbook(dictionary, columnarSheets);
+   }
+
+   private ColumnarSheet.TypedCells readTypedCells(SheetEntry sheet)
+   {
+      if (sheet.typedCount == 0) {
+         return ColumnarSheet.TypedCells.NONE;
+      }
+      int[] rowNumbers = new int[sheet.typedCount];
+      int[] columnNumbers = new int[sheet.typedCount];
+      int[] formatCodes = new int[sheet.typedCount];
+      double[] values = new double[sheet.typedCount];
+      for (int i = 0; i < sheet.typedCount; i++) {
+         int entry = sheet.typedOffset + TYPED_CELL_BYTES * i;
+         rowNumbers[i] = buffer.getInt(entry);
+         columnNumbers[i] = buffer.getInt(entry + 4);
+         formatCodes[i] = buffer.getInt(entry + 8);
+         values[i] = buffer.getDouble(entry + 12);
+      }
+      return new ColumnarSheet.TypedCells(rowNumbers, columnNumbers, formatCodes, values);
+   }
+
+   /**
+    * Builds a POI workbook holding the snapshot's cells, for use with {@link SpreadSheetDataSource}. This skips
+    * the unzipping and XML parsing of the original file. Formatted numbers get back their value and a cell style
+    * with their format, and booleans their type, as {@link LazyWorkbook} loads them.
+    */
+   public Workbook toWorkbook()
+   {
+      Workbook workbook = new XSSFWorkbook();
+      Map<Integer, CellStyle> numberStyles = new HashMap<>();
+      for (int sheetIndex = 0; sheetIndex < sheets.length; sheetIndex++) {
+         SheetEntry entry = sheets[sheetIndex];
+         Sheet sheet = workbook.createSheet(entry.name);
+         int typedIndex = 0;
+         int typedEntry = entry.typedOffset;
+         for (int rowNumber = 1; rowNumber <= entry.rowCount; rowNumber++) {
+            Row row = null;
+            for (int columnNumber = 1; columnNumber <= entry.columnCount; columnNumber++) {
+               int code = getCode(entry, columnNumber, rowNumber);
+               if (code == 0) {
+                  continue;
+               }
+               if (row == null) {
+                  row = sheet.createRow(rowNumber - 1);
+               }
+               Cell cell = row.createCell(columnNumber - 1);
+               // Typed cells are sorted by row and then column, the order cells are visited in
+               if (typedIndex < entry.typedCount && buffer.getInt(typedEntry) == rowNumber
+                     && buffer.getInt(typedEntry + 4) == columnNumber) {
+                  int formatCode = buffer.getInt(typedEntry + 8);
+                  double value = buffer.getDouble(typedEntry + 12);
+                  if (formatCode == ColumnarSheet.BOOLEAN_FORMAT) {
+                     cell.setCellValue(value != 0);
+                  } else {
+                     cell.setCellValue(value);
+                     String format = getString(formatCode);
+                     if (!format.equals(GENERAL_FORMAT)) {
+                        cell.setCellStyle(numberStyles.computeIfAbsent(formatCode,
+                              key -> createNumberStyle(workbook, format)));
+                     }
+                  }
+                  typedIndex++;
+                  typedEntry += TYPED_CELL_BYTES;
+               } else if (code > 0) {
+                  cell.setCellValue(getString(code));
+               } else {
+                  cell.setCellValue(getNumber(entry, columnNumber, code));
+               }
+            }
+         }
+      }
+      return workbook;
+   }
+
+   private static CellStyle createNumberStyle(Workbook workbook, String format)
+   {
+      CellStyle style = workbook.createCellStyle();
+      style.setDataFormat(workbook.createDataFormat().getFormat(format));
+      return style;
+   }
+
+   private String getValue(int sheetIndex, int columnNumber, int rowNumber)
+   {
+      SheetEntry sheet = sheets[sheetIndex];
+      int code = getCode(sheet, columnNumber, rowNumber);
+      if (code > 0) {
+         return getString(code);
+      } else if (code < 0) {
+         return ColumnarSheet.formatNumber(getNumber(sheet, columnNumber, code));
+      }
+      return null;
+   }
+
+   private int getCode(SheetEntry sheet, int columnNumber, int rowNumber)
+   {
+      if (columnNumber < 1 || columnNumber > sheet.columnCount || rowNumber < 1) {
+         return 0;
+      }
+      int entry = sheet.columnsOffset + COLUMN_ENTRY_BYTES * (columnNumber - 1);
+      if (rowNumber > buffer.getInt(entry + 8)) {
+         return 0;
+      }
+      return buffer.getInt((int) buffer.getLong(entry) + 4 * (rowNumber - 1));
+   }
+
+   private double getNumber(SheetEntry sheet, int columnNumber, int code)
+   {
+      int entry = sheet.columnsOffset + COLUMN_ENTRY_BYTES * (columnNumber - 1);
+      return buffer.getDouble((int) buffer.getLong(entry + 12) + 8 * (-code - 1));
+   }
+
+   private String getString(int code)
+   {
+      String string = strings[code];
+      if (string == null) {
+         int start = buffer.getInt(dictionaryOffset + 4 * (code - 1));
+         int end = buffer.getInt(dictionaryOffset + 4 * code);
+         byte[] bytes = new byte[end - start];
+         for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(stringDataOffset + start + i);
+         }
+         string = new String(bytes, StandardCharsets.UTF_8);
+         strings[code] = string; // Strings are immutable, so racing decodes are harmless
+      }
+      return string;
+   }
+
+   /**
+    * The position of one sheet's column table in the snapshot.
+    */
+   private static class SheetEntry
+   {
+      private final String name;
+      private final int rowCount;
+      private final int columnCount;
+      private final long cellCount;
+      private final int typedOffset;
+      private final int typedCount;
+      private final int columnsOffset;
+
+      private SheetEntry(String name, int rowCount, int columnCount, long cellCount, int typedOffset,
+            int typedCount, int columnsOffset)
+      {
+         this.name = name;
+         this.rowCount = rowCount;
+         this.columnCount = columnCount;
+         this.cellCount = cellCount;
+         this.typedOffset = typedOffset;
+         this.typedCount = typedCount;
+         this.columnsOffset = columnsOffset;
+      }
+   }
+}
@@ -0,0 +1,148 @@
+package org.mm.ss;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WorkbookSnapshotTest
+{
+   private static final String SHEET1 = "Sheet1";
+   private static final String SHEET2 = "Sheet2";
+
+   @Rule
+   public final TemporaryFolder folder = new TemporaryFolder();
+
+   @Test
+   public void TestRoundTrip() throws Exception
+   {
+      StringDictionary dictionary = new StringDictionary();
+      Map<String, ColumnarSheet> sheets = new LinkedHashMap<>();
+      sheets.put(SHEET1, new ColumnarSheet.Builder(SHEET1, dictionary)
+            .setText(1, 1, "Car")
+            .setText(1, 3, "Fahrzeug \u00fc")
+            .setNumber(2, 2, 2.5)
+            .build());
+      sheets.put(SHEET2, new ColumnarSheet.Builder(SHEET2, dictionary).setText(3, 1, "Car").build());
+      ColumnarWorkbook workbook = new ColumnarWorkbook(dictionary, sheets);
+      File file = folder.newFile("workbook.mmws");
+
+      WorkbookSnapshot.write(workbook, 0, 0, 0, file);
+      WorkbookSnapshot snapshot = WorkbookSnapshot.map(file);
+
+      assertThat(snapshot.getSheetNames(), contains(SHEET1, SHEET2));
+      assertThat(snapshot.getValue(new SpreadsheetLocation(SHEET1, 1, 3)), is("Fahrzeug \u00fc"));
+      assertThat(snapshot.getValue(new SpreadsheetLocation(SHEET1, 2, 2)), is("2.5"));
+      assertThat(snapshot.getValue(new SpreadsheetLocation(SHEET1, 2, 1)), is(nullValue()));
+      assertThat(snapshot.getValue(CellAddress.pack(1, 3, 1)), is("Car"));
+      assertThat(snapshot.toColumnarWorkbook().toString(), is(workbook.toString()));
+   }
+
+   @Test
+   public void TestRebuiltWhenSourceChanges() throws Exception
+   {
+      File source = folder.newFile("source.xlsx");
+      File snapshotFile = new File(folder.getRoot(), "source.mmws");
+      writeWorkbook(source, "Car");
+
+      WorkbookSnapshot snapshot = WorkbookSnapshot.open(source, snapshotFile);
+      assertThat(snapshot.getValue(new SpreadsheetLocation(SHEET1, 1, 1)), is("Car"));
+
+      writeWorkbook(source, "Truck");
+      assertThat(snapshot.isCurrent(source), is(false));
+
+      WorkbookSnapshot rebuilt = WorkbookSnapshot.open(source, snapshotFile);
+      assertThat(rebuilt.isCurrent(source), is(true));
+      assertThat(rebuilt.getValue(new SpreadsheetLocation(SHEET1, 1, 1)), is("Truck"));
+   }
+
+   @Test
+   public void TestTouchedSourceNotRebuilt() throws Exception
+   {
+      File source = folder.newFile("source.xlsx");
+      File snapshotFile = new File(folder.getRoot(), "source.mmws");
+      writeWorkbook(source, "Car");
+      WorkbookSnapshot.open(source, snapshotFile);
+      long snapshotLength = snapshotFile.length();
+
+      source.setLastModified(source.lastModified() - 60000);
+      WorkbookSnapshot reopened = WorkbookSnapshot.open(source, snapshotFile);
+
+      assertThat(reopened.getValue(new SpreadsheetLocation(SHEET1, 1, 1)), is("Car"));
+      assertThat(snapshotFile.length(), is(snapshotLength));
+      assertThat(WorkbookSnapshot.map(snapshotFile).isCurrent(source), is(true));
+   }
+
+   @Test
+   public void TestWorkbookKeepsFormatsAndBooleans() throws Exception
+   {
+      File source = folder.newFile("typed.xlsx");
+      Workbook original = new XSSFWorkbook();
+      CellStyle dateStyle = original.createCellStyle();
+      dateStyle.setDataFormat(original.createDataFormat().getFormat("yyyy-mm-dd"));
+      Row originalRow = original.createSheet(SHEET1).createRow(0);
+      Cell date = originalRow.createCell(0);
+      date.setCellValue(45352.0); // 2024-03-01
+      date.setCellStyle(dateStyle);
+      originalRow.createCell(1).setCellValue(true);
+      originalRow.createCell(2).setCellValue(7.0);
+      try (OutputStream out = new FileOutputStream(source)) {
+         original.write(out);
+      }
+
+      WorkbookSnapshot snapshot = WorkbookSnapshot.open(source, new File(folder.getRoot(), "typed.mmws"));
+      assertThat(snapshot.getValue(new SpreadsheetLocation(SHEET1, 1, 1)), is("2024-03-01"));
+      assertThat(snapshot.getValue(new SpreadsheetLocation(SHEET1, 2, 1)), is("TRUE"));
+
+      Row row = snapshot.toWorkbook().getSheet(SHEET1).getRow(0);
+      assertThat(row.getCell(0).getCellType(), is(CellType.NUMERIC));
+      assertThat(row.getCell(0).getNumericCellValue(), is(45352.0));
+      assertThat(row.getCell(0).getCellStyle().getDataFormatString(), is("yyyy-mm-dd"));
+      assertThat(row.getCell(1).getCellType(), is(CellType.BOOLEAN));
+      assertThat(row.getCell(1).getBooleanCellValue(), is(true));
+      assertThat(row.getCell(2).getNumericCellValue(), is(7.0));
+   }
+
+   @Test
+   public void TestTemporaryFileRemovedWhenWriteFails() throws Exception
+   {
+      File snapshotFile = folder.newFolder("occupied.mmws");
+      new File(snapshotFile, "entry").createNewFile(); // A non-empty directory cannot be replaced
+      StringDictionary dictionary = new StringDictionary();
+      ColumnarWorkbook workbook = new ColumnarWorkbook(dictionary, new LinkedHashMap<String, ColumnarSheet>());
+
+      try {
+         WorkbookSnapshot.write(workbook, 0, 0, 0, snapshotFile);
+      } catch (IOException e) {
+         // Expected
+      }
+
+      assertThat(new File(snapshotFile.getPath() + ".tmp").exists(), is(false));
+   }
+
+   private static void writeWorkbook(File file, String value) throws Exception
+   {
+      Workbook workbook = new XSSFWorkbook();
+      workbook.createSheet(SHEET1).createRow(0).createCell(0).setCellValue(value);
+      try (OutputStream out = new FileOutputStream(file)) {
+         workbook.write(out);
+      }
+   }
+}
@@ -0,0 +1,163 @@
+package org.mm.ss;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.regex.Pattern;
+
+/**
+ * The XSD datatypes that cell values are converted to when a reference is typed, with the Java value each one
+ * parses to. Lexical forms follow XML Schema and are checked before conversion, so Java-only forms such as
+ * <tt>1d</tt> or <tt>0x1p3</tt> are rejected. Booleans accept <tt>true</tt>, <tt>false</tt>, <tt>1</tt> and
+ * <tt>0</tt>, and dates and times may carry a time zone offset, which is kept.
+ */
+public enum XsdDatatype
+{
+   DOUBLE("xsd:double"),
+   FLOAT("xsd:float"),
+   DECIMAL("xsd:decimal"),
+   INTEGER("xsd:integer"),
+   LONG("xsd:long"),
+   INT("xsd:int"),
+   SHORT("xsd:short"),
+   BYTE("xsd:byte"),
+   BOOLEAN("xsd:boolean"),
+   DATE_TIME("xsd:dateTime"),
+   DATE("xsd:date"),
+   TIME("xsd:time");
+
+   private static final Pattern FLOATING_POINT = Pattern
+         .compile("[+-]?(\\d+(\\.\\d*)?|\\.\\d+)([eE][+-]?\\d+)?|[+-]?INF|NaN");
+   private static final Pattern DECIMAL_NUMBER = Pattern.compile("[+-]?(\\d+(\\.\\d*)?|\\.\\d+)");
+
+   private final String name;
+
+   XsdDatatype(String name)
+   {
+      this.name = name;
+   }
+
+   public String getName()
+   {
+      return name;
+   }
+
+   public static XsdDatatype forName(String name)
+   {
+      for (XsdDatatype datatype : values()) {
+         if (datatype.name.equals(name)) {
+            return datatype;
+         }
+      }
+      return null;
+   }
+
+   /**
+    * Parses the lexical form. Numeric types give a {@link Double}, {@link Float}, {@link BigDecimal},
+    * {@link BigInteger} or {@link Long}; <tt>xsd:boolean</tt> gives a {@link Boolean}; dates and times give the
+    * matching <tt>java.time</tt> type, with an offset if one is written. A <tt>xsd:date</tt> with an offset gives
+    * the {@link OffsetDateTime} of its first instant, midnight at that offset, as <tt>java.time</tt> has no
+    * offset date.
+    *
+    * @throws IllegalArgumentException
+    *            If the value is not a valid lexical form of the datatype
+    */
+   public Object parse(String value)
+   {
+      String trimmed = value.trim();
+      try {
+         switch (this) {
+            case DOUBLE:
+               return Double.valueOf(parseSpecial(checkLexicalForm(trimmed, FLOATING_POINT)));
+            case FLOAT:
+               return Float.valueOf(parseSpecial(checkLexicalForm(trimmed, FLOATING_POINT)));
+            case DECIMAL:
+               return new BigDecimal(checkLexicalForm(trimmed, DECIMAL_NUMBER));
+            case INTEGER:
+               return new BigInteger(trimmed);
+            case LONG:
+               return Long.valueOf(trimmed);
+            case INT:
+               return Long.valueOf(Integer.parseInt(trimmed));
+            case SHORT:
+               return Long.valueOf(Short.parseShort(trimmed));
+            case BYTE:
+               return Long.valueOf(Byte.parseByte(trimmed));
+            case BOOLEAN:
+               return parseBoolean(trimmed);
+            case DATE_TIME:
+               return hasOffset(trimmed, 10) ? OffsetDateTime.parse(trimmed) : LocalDateTime.parse(trimmed);
+            case DATE:
+               return hasOffset(trimmed, 10) ? parseOffsetDate(trimmed) : LocalDate.parse(trimmed);
+            case TIME:
+               return hasOffset(trimmed, 0) ? OffsetTime.parse(trimmed) : LocalTime.parse(trimmed);
+            default:
+               throw new IllegalStateException("Unknown datatype " + this);
+         }
+      } catch (NumberFormatException | DateTimeException e) {
+         throw new IllegalArgumentException("'" + value + "' is not a valid " + name);
+      }
+   }
+
+   private String checkLexicalForm(String value, Pattern lexicalForm)
+   {
+      if (!lexicalForm.matcher(value).matches()) {
+         throw new NumberFormatException("'" + value + "' is not a valid " + name);
+      }
+      return value;
+   }
+
+   private static OffsetDateTime parseOffsetDate(String value)
+   {
+      TemporalAccessor parsed = DateTimeFormatter.ISO_OFFSET_DATE.parse(value);
+      return LocalDate.from(parsed).atStartOfDay().atOffset(ZoneOffset.from(parsed));
+   }
+
+   private static String parseSpecial(String value)
+   {
+      switch (value) {
+         case "INF":
+         case "+INF":
+            return "Infinity";
+         case "-INF":
+            return "-Infinity";
+         default:
+            return value;
+      }
+   }
+
+   private static Boolean parseBoolean(String value)
+   {
+      switch (value) {
+         case "true":
+         case "1":
+            return Boolean.TRUE;
+         case "false":
+         case "0":
+            return Boolean.FALSE;
+         default:
+            throw new IllegalArgumentException("'" + value + "' is not a valid xsd:boolean");
+      }
+   }
+
+   /**
+    * Returns true if the value ends in a time zone (<tt>Z</tt> or <tt>+hh:mm</tt>/<tt>-hh:mm</tt>) after the
+    * given position.
+    */
+   private static boolean hasOffset(String value, int after)
+   {
+      if (value.endsWith("Z")) {
+         return value.length() > after;
+      }
+      int sign = Math.max(value.lastIndexOf('+'), value.lastIndexOf('-'));
+      return sign >= after && sign > 0 && value.indexOf(':', sign) > sign;
+   }
+}